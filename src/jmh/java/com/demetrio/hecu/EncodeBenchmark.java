@@ -0,0 +1,58 @@
+package com.demetrio.hecu;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.demetrio.hecu.audio.JaveVoiceEncoder;
+import com.demetrio.hecu.audio.OpusVoiceEncoder;
+import com.demetrio.hecu.audio.VoiceEncoder;
+
+/**
+ * Benchmark of the wav to ogg encoding of a sentence, with the in-process Opus encoder and with ffmpeg.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark
+{
+    // the encoder
+    @Param({ "opus", "jave" })
+    public String encoder;
+
+    private VoiceEncoder voiceEncoder;
+    private Hecu hecu;
+    private String[] sentence;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        voiceEncoder = encoder.equals("jave") ? new JaveVoiceEncoder() : new OpusVoiceEncoder();
+        hecu = SyntheticWords.hecu();
+        sentence = SyntheticWords.sentence(8);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException, UnsupportedAudioFileException
+    {
+        return voiceEncoder.encode(hecu.say(sentence));
+    }
+}
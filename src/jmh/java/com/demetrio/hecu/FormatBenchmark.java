@@ -0,0 +1,46 @@
+package com.demetrio.hecu;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the formatting of the word list sent by the <i>list</i> command.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatBenchmark
+{
+    private List<String> words;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        words = new ArrayList<>(SyntheticWords.bank().getWords());
+        words.sort(String::compareToIgnoreCase);
+    }
+
+    @Benchmark
+    public String getWordList()
+    {
+        return Bot.getWordList(words);
+    }
+}
@@ -0,0 +1,89 @@
+package com.demetrio.hecu;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.demetrio.hecu.audio.Clip;
+import com.demetrio.hecu.util.Binary;
+
+/**
+ * Benchmarks of the {@link Hecu Hecu} binary conversion and synthesis and of the word lookup,
+ * on a synthetic word bank.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HecuBenchmark
+{
+    // the longest ASCII quote within the binary length limit: 8 digits and a space for each character
+    private static final int BINARY_QUOTE_LENGTH = (Hecu.BINARY_LENGTH_LIMIT + 1) / 9;
+
+    // a quote as long as the binary request allows
+    private static final String BINARY_QUOTE;
+
+    static
+    {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < BINARY_QUOTE_LENGTH)
+            sb.append("Freeman is in the sector ");
+        BINARY_QUOTE = sb.substring(0, BINARY_QUOTE_LENGTH);
+    }
+
+    private Hecu hecu;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        hecu = SyntheticWords.hecu();
+    }
+
+    @Benchmark
+    public Binary sayBinary() throws IOException, UnsupportedAudioFileException
+    {
+        return hecu.sayBinary(BINARY_QUOTE);
+    }
+
+    @Benchmark
+    public String toBinary()
+    {
+        return hecu.toBinary(BINARY_QUOTE);
+    }
+
+    @Benchmark
+    public Clip getWordFileExact()
+    {
+        return hecu.getWordFile("word42");
+    }
+
+    // the word is stored uppercase: found at the second lookup
+    @Benchmark
+    public Clip getWordFileLower()
+    {
+        return hecu.getWordFile("unit42");
+    }
+
+    // the word is stored uppercase: found at the second lookup
+    @Benchmark
+    public Clip getWordFileMixed()
+    {
+        return hecu.getWordFile("UnIt42");
+    }
+}
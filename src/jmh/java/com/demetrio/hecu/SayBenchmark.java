@@ -0,0 +1,74 @@
+package com.demetrio.hecu;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import com.demetrio.hecu.audio.Clip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the {@link Hecu Hecu} sentence synthesis at several sentence lengths, on a synthetic word bank,
+ * and of the tokenization alone of the same sentence as a single message.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SayBenchmark
+{
+    // the number of words of the sentence
+    @Param({ "1", "8", "32" })
+    public int words;
+
+    private Hecu hecu;
+    private String[] sentence;
+    private String text;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        hecu = SyntheticWords.hecu();
+        sentence = SyntheticWords.sentence(words);
+        text = String.join(" ", sentence);
+    }
+
+    @Benchmark
+    public List<Clip> getClips()
+    {
+        return hecu.getClips(text, 0, text.length());
+    }
+
+    @Benchmark
+    public byte[] say() throws IOException, UnsupportedAudioFileException
+    {
+        // the audio is read fully, as the encoder does
+        try (AudioInputStream audio = hecu.say(sentence))
+        {
+            byte[] pcm = new byte[(int) (audio.getFrameLength() * audio.getFormat().getFrameSize())];
+            int off = 0;
+            int n;
+            while (off < pcm.length && (n = audio.read(pcm, off, pcm.length - off)) != -1)
+                off += n;
+            return pcm;
+        }
+    }
+}
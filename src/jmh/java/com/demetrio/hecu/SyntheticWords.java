@@ -0,0 +1,95 @@
+package com.demetrio.hecu;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import com.demetrio.hecu.audio.WordBank;
+import com.demetrio.hecu.text.PunctuationTable;
+
+/**
+ * Synthetic word bank for the benchmarks, so they run offline without the <i>/words</i> resources. <br/>
+ * Each word is a short tone of 16-bit mono PCM; like the real bank, it contains lowercase words,
+ * words stored only uppercase, the comma and period symbols, the punctuation silences and the binary digits.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+final class SyntheticWords
+{
+    // the audio format of the words
+    static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+    // the number of lowercase words and of uppercase words
+    static final int WORD_COUNT = 200;
+
+    private SyntheticWords()
+    {
+    }
+
+    // the i-th lowercase word
+    static String word(int i)
+    {
+        return "word" + i;
+    }
+
+    // the i-th word stored only uppercase
+    static String upperWord(int i)
+    {
+        return "UNIT" + i;
+    }
+
+    // a Hecu instance on the synthetic bank; the random photo pool is disabled, so nothing is downloaded
+    static Hecu hecu() throws IOException
+    {
+        Properties props = new Properties();
+        props.setProperty("photo.fetch.threads", "1");
+        props.setProperty("photo.random.pool.target", "0");
+        return new Hecu(props, PunctuationTable.load(), bank());
+    }
+
+    // the synthetic word bank
+    static WordBank bank() throws IOException
+    {
+        WordBank.Builder builder = new WordBank.Builder();
+        for (int i = 0; i < WORD_COUNT; i++)
+        {
+            builder.add(word(i), tone(i, 300 + (i % 7) * 60));
+            builder.add(upperWord(i), tone(i + 1, 300 + (i % 5) * 60));
+        }
+        builder.add("_comma", tone(3, 150));
+        builder.add("_period", tone(5, 250));
+        builder.add("ZERO", tone(7, 350));
+        builder.add("ONE", tone(11, 300));
+        PunctuationTable.load().getSilences().forEach(builder::addSilence);
+        return builder.build();
+    }
+
+    // a sentence of n words, cycling on the lowercase words and ending with a period
+    static String[] sentence(int n)
+    {
+        List<String> words = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            words.add(word((i * 37) % WORD_COUNT) + (i == n - 1 ? "." : i % 8 == 7 ? "," : ""));
+        return words.toArray(new String[0]);
+    }
+
+    // a tone of the given length, with a pitch depending on the seed
+    private static AudioInputStream tone(int seed, int millis)
+    {
+        int frames = (int) (FORMAT.getSampleRate() * millis / 1000);
+        byte[] pcm = new byte[frames * 2];
+        double step = 2 * Math.PI * (200 + seed % 40 * 10) / FORMAT.getSampleRate();
+        for (int i = 0; i < frames; i++)
+        {
+            short sample = (short) (Math.sin(i * step) * 8000);
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return new AudioInputStream(new ByteArrayInputStream(pcm), FORMAT, frames);
+    }
+}
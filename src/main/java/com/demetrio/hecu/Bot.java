@@ -1,56 +1,72 @@
 package com.demetrio.hecu;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.UnsupportedAudioFileException;
 
+import com.demetrio.hecu.audio.Clip;
+import com.demetrio.hecu.audio.JaveVoiceEncoder;
+import com.demetrio.hecu.audio.OpusSegmentBank;
+import com.demetrio.hecu.audio.OpusVoiceEncoder;
+import com.demetrio.hecu.audio.VoiceEncoder;
+import com.demetrio.hecu.cache.VoiceCache;
+import com.demetrio.hecu.cache.VoiceIndex;
+import com.demetrio.hecu.command.CommandHandler;
+import com.demetrio.hecu.command.CommandRouter;
+import com.demetrio.hecu.concurrent.ChatActionHeartbeat;
+import com.demetrio.hecu.concurrent.ChatDispatcher;
+import com.demetrio.hecu.concurrent.OutboundScheduler;
+import com.demetrio.hecu.concurrent.PendingRequests;
 import com.demetrio.hecu.exception.WordNotFoundException;
-import com.demetrio.hecu.util.Binary;
+import com.demetrio.hecu.journal.StateJournal;
+import com.demetrio.hecu.journal.UpdateTracker;
+import com.demetrio.hecu.metrics.LatencyHistogram;
+import com.demetrio.hecu.metrics.Metrics;
+import com.demetrio.hecu.metrics.MetricsServer;
 import com.demetrio.hecu.util.PhotoStream;
-import com.demetrio.hecu.util.Request;
 import com.demetrio.hecu.util.Request.Type;
+import com.demetrio.hecu.webhook.WebhookServer;
 import com.vdurmont.emoji.EmojiParser;
 
-import ws.schild.jave.Encoder;
-import ws.schild.jave.EncoderException;
-import ws.schild.jave.MultimediaObject;
-import ws.schild.jave.encode.AudioAttributes;
-import ws.schild.jave.encode.EncodingAttributes;
-
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.ActionType;
 import org.telegram.telegrambots.meta.api.methods.ParseMode;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendChatAction;
 import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.send.SendVoice;
+import org.telegram.telegrambots.meta.api.methods.updates.GetUpdates;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
 import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
 /**
  * Class that realizes the Telegram bot. It is a {@link TelegramLongPollingBot TelegramLongPollingBot}. <br/>
@@ -92,9 +108,29 @@ public class Bot extends TelegramLongPollingBot {
     // max photo requests (not random) in a day. Limit enforced by Google Custom Search API
     private static final int MAX_PHOTO_REQUESTS = 100;
 
-    /* the Map of the users requests in private or group chats.
-     * The key is the chat identifier, the value is a Set of user requests. */
-    private final Map<Long, Set<Request>> requests;
+    // max attempts of a message Telegram asks to retry later
+    private static final int MAX_SEND_ATTEMPTS = 3;
+
+    // the latency of the bot pipeline stages
+    private static final LatencyHistogram UPDATE_LATENCY = Metrics.getInstance().getStage("update");
+    private static final LatencyHistogram PARSE_LATENCY = Metrics.getInstance().getStage("parse");
+    private static final LatencyHistogram PENDING_LATENCY = Metrics.getInstance().getStage("pending");
+    private static final LatencyHistogram ENCODE_LATENCY = Metrics.getInstance().getStage("encode");
+    private static final LatencyHistogram STITCH_LATENCY = Metrics.getInstance().getStage("stitch");
+    private static final LatencyHistogram UPLOAD_LATENCY = Metrics.getInstance().getStage("upload");
+    private static final LatencyHistogram OUTBOUND_WAIT = Metrics.getInstance().getStage("outbound_wait");
+
+    // the identifiers of the chats where the bot was started
+    private final Set<Long> chats;
+
+    // the pending two-step requests, by chat and user
+    private final PendingRequests requests;
+
+    // the durable journal of the started chats and the last processed update
+    private final StateJournal journal;
+
+    // the filter of the duplicate updates
+    private final UpdateTracker updates;
 
     // the message template properties
     private final Properties messageProps;
@@ -102,6 +138,39 @@ public class Bot extends TelegramLongPollingBot {
     // the bot properties
     private final Properties botProps;
 
+    // the wav to ogg encoder of the voice replies
+    private final VoiceEncoder encoder;
+
+    // the pre-encoded clips, null if the sentences are encoded on each request
+    private final OpusSegmentBank segments;
+
+    // the cache of the encoded voice replies
+    private final VoiceCache voiceCache;
+
+    // the dispatcher of the updates on the worker pool
+    private final ChatDispatcher dispatcher;
+
+    // the Telegram file_id of the voice replies already uploaded
+    private final VoiceIndex voiceIndex;
+
+    // the router of the commands to their handlers
+    private final CommandRouter router;
+
+    // the chat actions shown while the replies are prepared
+    private final ChatActionHeartbeat heartbeat;
+
+    // the scheduler of the messages within the Telegram rate limits
+    private final OutboundScheduler outbound;
+
+    // a repeatable Telegram call
+    private interface TelegramCall<T>
+    {
+        T execute() throws TelegramApiException;
+    }
+
+    // the handlers of the two-step request objects, k = request type
+    private final Map<Type, CommandHandler> replies;
+
     /* the number of photo requests on this day.
      * It is atomic because the bot is concurrent; this variable has to be consistent so that
      * the photo request limit (not random) is not exceeded because of consistency errors.
@@ -119,8 +188,8 @@ public class Bot extends TelegramLongPollingBot {
     public Bot() 
     {
         LOGGER.info("HecuBot started");
-        // initialize the requests variable with a ConcurrentHashMap, needed for consistency
-        requests = new ConcurrentHashMap<>();
+        // initialize the chats with a concurrent Set, needed for consistency
+        chats = ConcurrentHashMap.newKeySet();
         // initialize with current date (yyyy-MM-dd)
         today = LocalDate.now();
         // initialize the photoRequests counter
@@ -140,6 +209,100 @@ public class Bot extends TelegramLongPollingBot {
         {
             LOGGER.log(Level.SEVERE, "Error in loading properties", e);
         }
+
+        // the in-process Opus encoder is the default, ffmpeg (through JAVE) can be selected as fallback
+        if (botProps.getProperty("voice.encoder", "opus").trim().equalsIgnoreCase("jave"))
+            encoder = new JaveVoiceEncoder();
+        else
+            encoder = new OpusVoiceEncoder();
+        LOGGER.log(Level.INFO, "Voice encoder: {0}", encoder.getClass().getSimpleName());
+
+        // the worker pool size and the max pending updates
+        dispatcher = new ChatDispatcher(
+                Integer.parseInt(botProps.getProperty("dispatch.threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors() * 2)).trim()),
+                Integer.parseInt(botProps.getProperty("dispatch.queue", "1000").trim()));
+
+        // the synthesis mode: encode (each sentence is encoded) or segments (clips are encoded once and stitched)
+        OpusSegmentBank bank = null;
+        if (botProps.getProperty("voice.synthesis", "encode").trim().equalsIgnoreCase("segments"))
+        {
+            try
+            {
+                bank = new OpusSegmentBank(Hecu.getInstance().getBank(),
+                        encoder instanceof OpusVoiceEncoder ? (OpusVoiceEncoder) encoder : new OpusVoiceEncoder());
+                LOGGER.info("Voice synthesis: pre-encoded segments");
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(Level.SEVERE, "Error pre-encoding the clips, falling back to sentence encoding", e);
+            }
+        }
+        segments = bank;
+
+        // the voice cache memory budget in bytes (default 16 MiB)
+        voiceCache = new VoiceCache(Long.parseLong(botProps.getProperty("voice.cache.bytes", "16777216").trim()));
+
+        // the voice file_id index, kept on disk so it survives restarts
+        voiceIndex = new VoiceIndex(Paths.get(botProps.getProperty("voice.index.path", "voice.index").trim()));
+
+        // restore the chats where the bot was started before the restart
+        journal = new StateJournal(Paths.get(botProps.getProperty("state.journal.path", "state.journal").trim()));
+        chats.addAll(journal.getChats());
+
+        // the polling delivers the updates in order, the webhook concurrently
+        updates = new UpdateTracker(journal.getLastUpdateId(), !isWebhook());
+        // with a webhook, Telegram itself delivers again the updates not acknowledged
+        if (!isWebhook())
+            resumeUpdates();
+
+        // a request not completed within its time to live (default 10 minutes) is forgotten
+        requests = new PendingRequests(Long.parseLong(botProps.getProperty("request.ttl", "600").trim()), TimeUnit.SECONDS);
+
+        // the chat actions are sent in background, refreshed only when about to expire
+        heartbeat = new ChatActionHeartbeat(this::sendAction);
+
+        // the Telegram limits: 30 messages per second, 1 per second in a chat, 20 per minute in a group
+        outbound = new OutboundScheduler(Double.parseDouble(botProps.getProperty("outbound.global.rate", "30").trim()),
+                Double.parseDouble(botProps.getProperty("outbound.chat.rate", "1").trim()),
+                Double.parseDouble(botProps.getProperty("outbound.group.rate", "20").trim()));
+
+        // the commands, with or without the bot username suffix
+        router = new CommandRouter(getBotUsername())
+                .register("start", this::start)
+                .register("stop", this::stop)
+                .register("list", this::list)
+                .register("say", this::sayRequest)
+                .register("help", this::help)
+                .register("binary", this::binaryRequest)
+                .register("photo", this::photoRequest);
+
+        // the second step of the two-step requests
+        replies = new EnumMap<>(Type.class);
+        replies.put(Type.SAY, this::sayReply);
+        replies.put(Type.BINARY, this::binaryReply);
+        replies.put(Type.PHOTO, this::photoReply);
+
+        // the metrics are always exported through JMX, and in Prometheus format if a local port is set
+        Metrics.getInstance().gauge("photo_quota_used", photoRequests::get);
+        Metrics.getInstance().gauge("dispatch_queue_depth", dispatcher::getQueueDepth);
+        Metrics.getInstance().gauge("dispatch_rejected", dispatcher::getRejected);
+        Metrics.getInstance().gauge("dispatch_wait_avg_ms", () -> Math.round(dispatcher.getAverageWaitMillis()));
+        Metrics.getInstance().gauge("dispatch_wait_max_ms", dispatcher::getMaxWaitMillis);
+        Metrics.getInstance().gauge("voice_cache_hits", voiceCache::getHits);
+        Metrics.getInstance().gauge("voice_cache_misses", voiceCache::getMisses);
+        int metricsPort = Integer.parseInt(botProps.getProperty("metrics.port", "0").trim());
+        if (metricsPort > 0)
+        {
+            try
+            {
+                new MetricsServer(Metrics.getInstance(), metricsPort);
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(Level.SEVERE, "Error starting the metrics endpoint", e);
+            }
+        }
     }
 
     /**
@@ -153,537 +316,560 @@ public class Bot extends TelegramLongPollingBot {
         return botProps.getProperty("bot.username");
     }
 
+    /**
+     * Check if the updates are delivered by a webhook instead of long polling,
+     * that is if <i>update.mode</i> is <i>webhook</i> in the bot properties.
+     * @return {@code true} in webhook mode
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public boolean isWebhook()
+    {
+        return botProps.getProperty("update.mode", "polling").trim().equalsIgnoreCase("webhook");
+    }
+
+    /**
+     * Start the {@link WebhookServer WebhookServer} receiving the updates, on the address and path of the bot
+     * properties. Each received update is passed to {@link #onUpdateReceived(Update) onUpdateReceived(Update)},
+     * as the long polling does. <br/>
+     * The webhook URL is not registered on Telegram here: it is the public HTTPS URL of the reverse proxy in front of
+     * the server, registered once with the <i>setWebhook</i> Bot API method.
+     * @return the started server
+     * @throws IOException - if the webhook address can't be bound
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public WebhookServer startWebhook() throws IOException
+    {
+        // the server is plain HTTP, by default reachable only by a local reverse proxy
+        InetSocketAddress address = new InetSocketAddress(botProps.getProperty("webhook.host", "127.0.0.1").trim(),
+                Integer.parseInt(botProps.getProperty("webhook.port", "8443").trim()));
+        return new WebhookServer(address, botProps.getProperty("webhook.path", "/webhook").trim(),
+                botProps.getProperty("webhook.secret", "").trim(), this::onUpdateReceived);
+    }
+
     /**
      * Method for responding to updates, in this case the text messages sent by the user. <br/>
-     * It incorporates the bot logic.
+     * The update is handed to the {@link ChatDispatcher ChatDispatcher}: updates of different chats are
+     * processed in parallel, updates of the same chat in order.
      * @param update the update, that is the text message sent by the user
      * @author Alessandro Chiariello (Demetrio)
      */
     @Override
     public void onUpdateReceived(Update update) 
     {
-        // if it's a text message
-        if (update.hasMessage() && update.getMessage().hasText()) 
+        long start = System.nanoTime();
+
+        // skip the updates already received, e.g. processed before a restart
+        if (update.getUpdateId() != null && !updates.accept(update.getUpdateId()))
+            return;
+
+        // if it's a text message, the update is committed when it's handled
+        if (update.hasMessage() && update.getMessage().hasText())
+        {
+            Runnable task = () -> {
+                try
+                {
+                    handleUpdate(update);
+                }
+                finally
+                {
+                    commit(update);
+                }
+            };
+            if (!dispatcher.dispatch(update.getMessage().getChatId(), task))
+                commit(update);
+        }
+        else
+            commit(update);
+        UPDATE_LATENCY.recordSince(start);
+    }
+
+    // record in the journal that an update was processed
+    // The journal keeps the last update such that all the previous ones were processed too, so an update
+    // interrupted by a crash is not skipped after the restart
+    private void commit(Update update)
+    {
+        if (update.getUpdateId() != null)
+            journal.setLastUpdateId(updates.complete(update.getUpdateId()));
+    }
+
+    // respond to a text message. It incorporates the bot logic
+    // It runs on a dispatcher worker, never concurrently with another update of the same chat
+    private void handleUpdate(Update update)
+    {
+        Message message = update.getMessage();
+        try
+        {
+            handleMessage(message);
+        }
+        finally
+        {
+            // the reply was sent or it failed: in both cases the chat action ends
+            heartbeat.stop(message.getChatId());
+        }
+    }
+
+    // respond to a text message: a two-step request object or a command
+    private void handleMessage(Message message)
+    {
+        // ---------------------- Two-step messages ------------------------------
+        // User object request and response by bot
+        // The bot checks if the user has done the first step (request) and return to him/her
+        // a result based on the user message (I call this object request)
+        // Any message of a user in a request is the object of the request, even if it looks like a command
+        long start = System.nanoTime();
+        Type pending = consumeRequest(message.getChatId(), message.getFrom().getId());
+        PENDING_LATENCY.recordSince(start);
+        if (pending != null)
+        {
+            Metrics.getInstance().increment("requests_total{type=\"" + pending.toString().toLowerCase() + "\"}");
+            replies.get(pending).handle(message);
+        }
+
+        // ---------------------- Request messages -------------------------------
+        // The router checks if a request in a group has the bot reference (@HecuBot)
+        else
+        {
+            start = System.nanoTime();
+            CommandHandler command = router.route(message);
+            PARSE_LATENCY.recordSince(start);
+            if (command != null)
+                command.handle(message);
+        }
+    }
+
+    // bot starting
+    private void start(Message message)
+    {
+        // if the bot was not started in this chat
+        // add this chat for accepting bot requests
+        if (chats.add(message.getChatId()))
         {
-            Message message = update.getMessage();
-            // ---------------------- Request messages -------------------------------
-            // The bot checks if a request in a group has the bot reference (@HecuBot)
-            // and if the user has not already sent a request to the bot
+            journal.activate(message.getChatId());
+            LOGGER.log(Level.INFO, "Bot activated in chat {0,number,#}\nBot activation recap: {1}",
+                    new Object[]{ message.getChatId(), chats });
 
-            // bot starting
-            if (((!message.isGroupMessage() && message.getText().equals("/start"))
-                    || message.getText().equals("/start@HecuBot"))
-            		&& isUserNotInRequest(message.getFrom().getId(), message.getChatId()))
+            // bot typing
+            try 
             {
-                // if the bot was not started in this chat
-                if (requests.get(message.getChatId()) == null)
-                {
-                    // add this chat for accepting bot requests
-                    requests.put(message.getChatId(), new HashSet<>());
-                    LOGGER.log(Level.INFO, "Bot activated in chat {0,number,#}\nBot activation recap: {1}",
-                            new Object[]{ message.getChatId(), requests.keySet() });
-
-                    // bot typing
-                    SendChatAction typing = new SendChatAction(message.getChatId(),ActionType.TYPING.toString());
-                    try 
-                    {
-                        execute(typing);
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
 
-                        // sends a started confirm message
-                        SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.hi"))
-                                .setReplyToMessageId(message.getMessageId());
-                        execute(sendMessage);
-                    } 
-                    catch (TelegramApiException e) 
-                    {
-                        LOGGER.log(Level.SEVERE, "Error in sending \"hi\" message", e);
-                    }
-                }
+                // sends a started confirm message
+                SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.hi"))
+                        .setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            } 
+            catch (TelegramApiException e) 
+            {
+                LOGGER.log(Level.SEVERE, "Error in sending \"hi\" message", e);
             }
-            // bot stopping
-            else if (((!message.isGroupMessage() && message.getText().equals("/stop"))
-                    || message.getText().equals("/stop@HecuBot"))
-                    && isUserNotInRequest(message.getFrom().getId(), message.getChatId()))
+        }
+    }
+
+    // bot stopping
+    private void stop(Message message)
+    {
+        // if the bot was started in this chat
+        // remove the chat and its pending requests
+        if (chats.remove(message.getChatId()))
+        {
+            journal.deactivate(message.getChatId());
+            requests.removeChat(message.getChatId());
+
+            LOGGER.log(Level.INFO, "Bot removed from chat {0,number,#}\nBot activation recap: {1}",
+                    new Object[]{ message.getChatId(), chats });
+            try 
             {
-                // if the bot was started in this chat
-                if (requests.get(message.getChatId()) != null)
-                {
-                    // remove the chat from the requests Map
-                    requests.remove(message.getChatId());
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
 
-                    LOGGER.log(Level.INFO, "Bot removed from chat {0,number,#}\nBot activation recap: {1}",
-                            new Object[]{ message.getChatId(), requests.keySet() });
-                    SendChatAction typing = new SendChatAction(message.getChatId(),ActionType.TYPING.toString());
-                    try 
-                    {
-                        execute(typing);
+                // send a stopped confirm message
+                SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.bye"))
+                    .setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            } 
+            catch (TelegramApiException e) 
+            {
+                LOGGER.log(Level.SEVERE, "Error in sending \"bye\" message", e);
+            }
+        }
+    }
+
+    // list request
+    private void list(Message message)
+    {
+    	if (chats.contains(message.getChatId()))
+    	{
+            try 
+            {
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
 
-                        // send a stopped confirm message
-                        SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.bye"))
+                // send the words list, sorted through Stream, to the user.
+                // EmojiParser used for parsing emoji string code (like :us:) to Unicode
+                SendMessage sendMessage = new SendMessage(message.getChatId(),
+                        EmojiParser.parseToUnicode(messageProps.getProperty("hecu.list") + "\n" + 
+                                getWordList(Hecu.getInstance().getWords().stream()
+                                        .sorted(String::compareToIgnoreCase).collect(Collectors.toList()))))
                             .setReplyToMessageId(message.getMessageId());
-                        execute(sendMessage);
-                    } 
-                    catch (TelegramApiException e) 
-                    {
-                        LOGGER.log(Level.SEVERE, "Error in sending \"bye\" message", e);
-                    }
-                }
+                reply(message.getChatId(), sendMessage);
+            } 
+            catch (TelegramApiException e) 
+            {
+                LOGGER.log(Level.SEVERE, "Error in sending \"list\" message", e);
             }
+    	}
+    }
+
+    // say request
+    private void sayRequest(Message message)
+    {
+        // if the bot was started in this chat
+        if (chats.contains(message.getChatId()))
+        {
+            // it's a two-step request so it is added to the pending requests
+            requests.add(message.getChatId(), message.getFrom().getId(), Type.SAY);
+            LOGGER.log(Level.INFO, "New \"say\" request in chat {0,number,#}\nRequest recap: {1}",
+                    new Object[]{ message.getChatId(), requests });
+            try 
+            {
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
 
-            // list request
-            else if (((!message.isGroupMessage() && message.getText().equals("/list"))
-                    || message.getText().equals("/list@HecuBot"))
-                    && isUserNotInRequest(message.getFrom().getId(), message.getChatId()))
-            {
-            	if (requests.get(message.getChatId()) != null)
-            	{
-            		SendChatAction typing = new SendChatAction(message.getChatId(),ActionType.TYPING.toString());
-	                try 
-	                {
-	                    execute(typing);
-
-	                    // send the words list, sorted through Stream, to the user.
-                        // EmojiParser used for parsing emoji string code (like :us:) to Unicode
-	                    SendMessage sendMessage = new SendMessage(message.getChatId(),
-	                    		EmojiParser.parseToUnicode(messageProps.getProperty("hecu.list") + "\n" + 
-	                    				getWordList(Hecu.getInstance().getWords().stream()
-	                                    		.sorted(String::compareToIgnoreCase).collect(Collectors.toList()))))
-	                                .setReplyToMessageId(message.getMessageId());
-	                    execute(sendMessage);
-	                } 
-	                catch (TelegramApiException e) 
-	                {
-                        LOGGER.log(Level.SEVERE, "Error in sending \"list\" message", e);
-	                }
-            	}
+                // send the say request ask message
+                SendMessage sendMessage = new SendMessage(message.getChatId(),
+                        EmojiParser.parseToUnicode(messageProps.getProperty("hecu.say")))
+                            .setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            } 
+            catch (TelegramApiException e) 
+            {
+                LOGGER.log(Level.SEVERE, "Error in sending \"say\" message", e);
             }
-            // say request
-            else if (((!message.isGroupMessage() && message.getText().equals("/say"))
-                    || message.getText().equals("/say@HecuBot"))
-                    && isUserNotInRequest(message.getFrom().getId(), message.getChatId()))
-            {
-                Set<Request> set = requests.get(message.getChatId());
-                // if the bot was started in this chat
-                if (set != null) 
-                {
-                	Integer userId = message.getFrom().getId();
-                    Request request = new Request(userId, Type.SAY);
-
-                    // it's a two-step request so it is added to the request Set
-                    set.add(request);
-                    LOGGER.log(Level.INFO, "New \"say\" request in chat {0,number,#}\nRequest recap: {1}",
-                            new Object[]{ message.getChatId(), set });
-                    SendChatAction typing = new SendChatAction(message.getChatId(), ActionType.TYPING.toString());
-                    try 
-                    {
-                        execute(typing);
+        }
+    }
 
-                        // send the say request ask message
-                        SendMessage sendMessage = new SendMessage(message.getChatId(),
-                                EmojiParser.parseToUnicode(messageProps.getProperty("hecu.say")))
-                                    .setReplyToMessageId(message.getMessageId());
-                        execute(sendMessage);
-                    } 
-                    catch (TelegramApiException e) 
-                    {
-                        LOGGER.log(Level.SEVERE, "Error in sending \"say\" message", e);
-                    }
-                }
+    // help request (no need of bot starting)
+    private void help(Message message)
+    {
+        try 
+        {
+            heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+            SendMessage sendMessage = new SendMessage(message.getChatId(), messageProps.getProperty("hecu.help").replaceFirst("\\$",PHOTO_GROUP_LIMIT+""))
+                    .setReplyToMessageId(message.getMessageId());
+            reply(message.getChatId(), sendMessage);
+        } 
+        catch (TelegramApiException e) 
+        {
+            LOGGER.log(Level.SEVERE, "Error in sending \"help\" message", e);
+        }
+    }
+
+    // binary request
+    private void binaryRequest(Message message)
+    {
+        // if the bot was started in this chat
+        if (chats.contains(message.getChatId()))
+        {
+            // added because of the two-step request thing
+            requests.add(message.getChatId(), message.getFrom().getId(), Type.BINARY);
+            LOGGER.log(Level.INFO, "New \"binary\" request in chat {0,number,#}\nRequest recap: {1}",
+                    new Object[]{ message.getChatId(), requests });
+            try 
+            {
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+
+                // send the binary request ask message
+                SendMessage sendMessage = new SendMessage(message.getChatId(),
+                        EmojiParser.parseToUnicode(messageProps.getProperty("hecu.binary")))
+                                .setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            } 
+            catch (TelegramApiException e) 
+            {
+                LOGGER.log(Level.SEVERE, "Error in sending \"binary\" message", e);
             }
-            // help request (no need of bot starting)
-            else if (((!message.isGroupMessage() && message.getText().equals("/help"))
-                    || message.getText().equals("/help@HecuBot"))
-                    && isUserNotInRequest(message.getFrom().getId(), message.getChatId()))
+        }
+    }
+
+    // photo request
+    private void photoRequest(Message message)
+    {
+        // if the bot was started in this chat
+        if (chats.contains(message.getChatId()))
+        {
+            // added because of the two-step request thing
+            requests.add(message.getChatId(), message.getFrom().getId(), Type.PHOTO);
+            LOGGER.log(Level.INFO, "New \"photo\" request in chat {0,number,#}\nRequest recap: {1}",
+                    new Object[]{ message.getChatId(), requests });
+            try 
             {
-                SendChatAction typing = new SendChatAction(message.getChatId(), ActionType.TYPING.toString());
-                try 
-                {
-                    execute(typing);
-                    SendMessage sendMessage = new SendMessage(message.getChatId(), messageProps.getProperty("hecu.help").replaceFirst("\\$",PHOTO_GROUP_LIMIT+""))
-                            .setReplyToMessageId(message.getMessageId());
-                    execute(sendMessage);
-                } 
-                catch (TelegramApiException e) 
-                {
-                    LOGGER.log(Level.SEVERE, "Error in sending \"help\" message", e);
-                }
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                SendMessage sendMessage = new SendMessage(message.getChatId(),
+                        EmojiParser.parseToUnicode(messageProps.getProperty("hecu.photo").replace("$",PHOTO_GROUP_LIMIT+"")))
+                		.setParseMode(ParseMode.HTML).setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            } 
+            catch (TelegramApiException e) 
+            {
+                LOGGER.log(Level.SEVERE, "Error in sending \"photo\" message", e);
             }
-            // binary request
-            else if (((!message.isGroupMessage() && message.getText().equals("/binary"))
-                    || message.getText().equals("/binary@HecuBot"))
-                    && isUserNotInRequest(message.getFrom().getId(), message.getChatId()))
+        }
+    }
+
+    // bot consumes say request
+    private void sayReply(Message message)
+    {
+        // the sentence is tokenized in words and punctuation so that the bot can get the audio of the words
+        // if present, the initial / is skipped
+        String sentence = message.getText();
+        int start = sentence.charAt(0)=='/' ? 1 : 0;
+        try 
+        {
+            heartbeat.start(message.getChatId(), ActionType.RECORDAUDIO.toString());
+            try 
             {
-                Set<Request> set = requests.get(message.getChatId());
-                if (set != null) 
+                // the cache key: sentences with the same words and symbols have the same audio
+                // it's got without resolving the words, so a cached audio is sent right away
+                String key = Hecu.getInstance().normalize(sentence, start, sentence.length());
+
+                // if there's nothing to say, e.g. only punctuation without audio
+                if (key.isEmpty())
                 {
-                	Integer userId = message.getFrom().getId();
-                    Request request = new Request(userId, Type.BINARY);
-
-                    // added because of the two-step request thing
-                    set.add(request);
-                    LOGGER.log(Level.INFO, "New \"binary\" request in chat {0,number,#}\nRequest recap: {1}",
-                            new Object[]{ message.getChatId(), set });
-                    SendChatAction typing = new SendChatAction(message.getChatId(), ActionType.TYPING.toString());
-                    try 
-                    {
-                        execute(typing);
-
-                        // send the binary request ask message
-                        SendMessage sendMessage = new SendMessage(message.getChatId(),
-                                EmojiParser.parseToUnicode(messageProps.getProperty("hecu.binary")))
-                                        .setReplyToMessageId(message.getMessageId());
-                        execute(sendMessage);
-                    } 
-                    catch (TelegramApiException e) 
-                    {
-                        LOGGER.log(Level.SEVERE, "Error in sending \"binary\" message", e);
-                    }
+                    heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                    SendMessage sendMessage = new SendMessage(message.getChatId(),
+                            "Empty sentence for say request").setReplyToMessageId(message.getMessageId());
+                    reply(message.getChatId(), sendMessage);
+                    return;
                 }
+
+                // send the sentence audio, resolving its clips only if it's not cached
+                if (sendVoice(message, "say:" + key, () -> Hecu.getInstance().getClips(sentence, start, sentence.length())))
+                    LOGGER.log(Level.INFO, "\"say\" request answered in chat {0,number,#}\nVoice cache recap: {1}",
+                            new Object[]{ message.getChatId(), voiceCache });
             }
-            // photo request
-            else if (((!message.isGroupMessage() && message.getText().equals("/photo"))
-                    || message.getText().equals("/photo@HecuBot"))
-                    && isUserNotInRequest(message.getFrom().getId(), message.getChatId()))
+            // if some word was not found
+            catch (WordNotFoundException e) 
             {
-                Set<Request> set = requests.get(message.getChatId());
-                if (set != null) 
-                {
-                	Integer userId = message.getFrom().getId();
-                    Request request = new Request(userId, Type.PHOTO);
-
-                    // added because of the two-step request thing
-                    set.add(request);
-                    LOGGER.log(Level.INFO, "New \"photo\" request in chat {0,number,#}\nRequest recap: {1}",
-                            new Object[]{ message.getChatId(), set });
-                    SendChatAction typing = new SendChatAction(message.getChatId(), ActionType.TYPING.toString());
-                    try 
-                    {
-                        execute(typing);
-                        SendMessage sendMessage = new SendMessage(message.getChatId(),
-                                EmojiParser.parseToUnicode(messageProps.getProperty("hecu.photo").replace("$",PHOTO_GROUP_LIMIT+"")))
-                        		.setParseMode(ParseMode.HTML).setReplyToMessageId(message.getMessageId());
-                        execute(sendMessage);
-                    } 
-                    catch (TelegramApiException e) 
-                    {
-                        LOGGER.log(Level.SEVERE, "Error in sending \"photo\" message", e);
-                    }
-                }
+                Metrics.getInstance().increment("word_not_found_total");
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                SendMessage sendMessage = new SendMessage(message.getChatId(),
+                        e.getMessage()).setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            }
+        } 
+        catch (TelegramApiException | IOException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error in processing \"say\" request", e);
+        }
+    }
+
+    // bot consumes binary request
+    private void binaryReply(Message message)
+    {
+        try 
+        {
+            heartbeat.start(message.getChatId(), ActionType.RECORDAUDIO.toString());
+
+            // get the binary String
+            String binary = Hecu.getInstance().toBinary(message.getText().charAt(0)=='/' ? message.getText().substring(1)
+                    : message.getText());
+            // the binary audio would be too large
+            if (binary.length() > Hecu.BINARY_LENGTH_LIMIT) {
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                SendMessage sendMessage = new SendMessage(message.getChatId(),
+                        messageProps.getProperty("hecu.error.binary.limit").replace("$", Hecu.BINARY_LENGTH_LIMIT + ""))
+                        .setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            }
+            else if (!binary.isEmpty()) {
+                // same sending procedure of say response
+                // the binary audio depends only on the binary string
+                sendVoice(message, "binary:" + binary, () -> Hecu.getInstance().getBinaryClips(binary));
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                SendMessage sendMessage = new SendMessage(message.getChatId(), binary)
+                        .setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            }
+            // if there's nothing to convert
+            else {
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                SendMessage sendMessage = new SendMessage(message.getChatId(),
+                        "Empty string for binary request").setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            }
+        } 
+        catch (TelegramApiException | IOException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error in processing \"binary\" request", e);
+        }
+    }
+
+    // bot consumes photo request
+    private void photoReply(Message message)
+    {
+    	String query = message.getText().charAt(0)=='/' ? message.getText().substring(1) : message.getText();
+
+    	// the query limit point
+		int index = query.lastIndexOf("//");
+
+		// the number of photos requested
+		int photoNumber;
+
+		try
+        {
+            // if photo number not present in message, get the half of the photo group limit
+            if (index==-1)
+                photoNumber = PHOTO_GROUP_LIMIT/2;
+            else
+            {
+                // parse photo number and query
+                photoNumber = Integer.parseInt(query.substring(index+2));
+                query = query.substring(0,index);
             }
-            // ---------------------- Request messages -------------------------------
-
-            // ---------------------- Two-step messages ------------------------------
-            // User object request and response by bot
-            // The bot checks if the user has done the first step (request) and return to him/her
-            // a result based on the user message (I call this object request)
-            else 
-            {
-                Set<Request> set = requests.get(message.getChatId());
-                // bot consumes say request
-                // If the user is in a say request, the request is removed from the Set and the loop
-                // is entered
-                if (set.removeIf(e -> e.getUser().equals(message.getFrom().getId()) && e.getType() == Type.SAY))
+
+            // if photo number in range [1,n] (now n = 10)
+            if (photoNumber>=1 && photoNumber<=PHOTO_GROUP_LIMIT)
+            {
+                // save upload photo action as Runnable
+                // In this way, we can execute it anywhere so that the user is reassured that the bot is
+                // working on the response. The heartbeat sends it only when the previous one is about to expire
+                Runnable sendPhoto = () -> heartbeat.start(message.getChatId(), ActionType.UPLOADPHOTO.toString());
+                List<PhotoStream> streams = null;
+
+                // if the query specify a random photo request
+                if (query.toLowerCase().startsWith("random"))
                 {
-                    LOGGER.log(Level.INFO, "\"say\" request consumed in chat {0,number,#}\nRequest recap: {1}",
-                            new Object[]{ message.getChatId(), set });
-
-                    // split the sentence on whitespace so that the bot can get the audio of the words
-                    // if present, the initial / is removed
-                    String[] sentence = (message.getText().charAt(0)=='/' ? message.getText().substring(1) : message.getText())
-                            .split("\\s+");
-                    SendChatAction recording = new SendChatAction(message.getChatId(),
-                            ActionType.RECORDAUDIO.toString());
-                    try 
+                    int width, height;
+
+                    // width start
+                    int start = query.indexOf('-');
+
+                    // if width is specified (we go to the first width character eg: -23 -> 2)
+                    if (start++ != -1)
                     {
-                        execute(recording);
-                        try 
-                        {
-                            // get the sentence audio
-                            AudioInputStream audio = Hecu.getInstance().say(sentence);
+                        // height start
+                        int end = query.lastIndexOf('-');
 
-                            // if the user has typed something
-                            if (audio != null) 
-                            {
-                                // In order to encode the wav in ogg through ffmpeg Java wrapper,
-                                // it's necessary to create two temp files to pass to ffmpeg
-
-                                // save the audio in a temporary wav file
-                            	Path inputTemp = createTempWavFile(audio);
-
-                            	// create a temporary ogg file with generated filename
-                            	Path outputTemp = Files.createTempFile(genFilename(),".ogg");
-
-                                // set the ffmpeg attributes for ogg conversion
-                            	AudioAttributes attr = new AudioAttributes()
-                            			.setCodec("libopus");
-                            	EncodingAttributes encAttr = new EncodingAttributes()
-                            			.setInputFormat("wav")
-                            			.setOutputFormat("ogg")
-                            			.setAudioAttributes(attr);
-
-                            	// encode the wav in ogg (from temp wav file to temp ogg file)
-                            	new Encoder().encode(new MultimediaObject(inputTemp.toFile()), outputTemp.toFile(), encAttr);
-
-                            	// send the audio as voice
-                                SendVoice voice = new SendVoice().setChatId(message.getChatId())
-                                        .setReplyToMessageId(message.getMessageId()).setVoice(outputTemp.toFile());
-                                execute(voice);
-
-                                // delete the temporary files
-                                if (!Files.deleteIfExists(inputTemp) || !Files.deleteIfExists(outputTemp))
-                                    LOGGER.warning("\"say\" request: One of both temporary files not deleted\nThey will be deleted on shutdown");
-                            }
+                        // if height is specified
+                        if (start < end)
+                        {
+                            // parse width and height
+                            width = Integer.parseInt(query.substring(start, end));
+                            height = Integer.parseInt(query.substring(end + 1));
                         }
-                        // if some word was not found
-                        catch (WordNotFoundException e) 
+                        else
                         {
-                            SendChatAction typing = new SendChatAction(message.getChatId(),
-                                    ActionType.TYPING.toString());
-                            execute(typing);
-                            SendMessage sendMessage = new SendMessage(message.getChatId(),
-                                    e.getMessage()).setReplyToMessageId(message.getMessageId());
-                            execute(sendMessage);
+                            // parse width and set height as width
+                            width = Integer.parseInt(query.substring(start));
+                            height = width;
                         }
-                    } 
-                    catch (TelegramApiException | IOException | EncoderException | UnsupportedAudioFileException e)
-                    {
-                        LOGGER.log(Level.SEVERE, "Error in processing \"say\" request", e);
                     }
-                }
-                // bot consumes binary request
-                else if (set.removeIf(e -> e.getUser().equals(message.getFrom().getId()) && e.getType() == Type.BINARY))
-                {
-                    LOGGER.log(Level.INFO, "\"binary\" request consumed in chat {0,number,#}\nRequest recap: {1}",
-                            new Object[]{ message.getChatId(), set });
+                    else
+                        // use default random photo size
+                        width = height = RANDOM_PHOTO_DEFAULT_SIZE;
 
-                    SendChatAction recording = new SendChatAction(message.getChatId(),
-                            ActionType.RECORDAUDIO.toString());
-                    try 
-                    {
-                        execute(recording);
-
-                        // get the binary object containing the binary audio and String
-                        Binary binary = Hecu.getInstance().sayBinary(message.getText().charAt(0)=='/' ? message.getText().substring(1)
-                                : message.getText());
-                        if (binary != null) {
-                            // same encoding procedure of say response
-                            Path inputTemp = createTempWavFile(binary.getAudio());
-                            Path outputTemp = Files.createTempFile(genFilename(), ".ogg");
-                            AudioAttributes attr = new AudioAttributes()
-                                    .setCodec("libopus");
-                            EncodingAttributes encAttr = new EncodingAttributes()
-                                    .setInputFormat("wav")
-                                    .setOutputFormat("ogg")
-                                    .setAudioAttributes(attr);
-                            new Encoder().encode(new MultimediaObject(inputTemp.toFile()), outputTemp.toFile(), encAttr);
-                            SendVoice voice = new SendVoice().setChatId(message.getChatId())
-                                    .setReplyToMessageId(message.getMessageId()).setVoice(outputTemp.toFile());
-                            execute(voice);
-                            if (!Files.deleteIfExists(inputTemp) || !Files.deleteIfExists(outputTemp))
-                                LOGGER.warning("\"say\" request: One of both temporary files not deleted\nThey will be deleted on shutdown");
-                            SendChatAction typing = new SendChatAction(message.getChatId(),
-                                    ActionType.TYPING.toString());
-                            execute(typing);
-                            SendMessage sendMessage = new SendMessage(message.getChatId(), binary.getValue())
-                                    .setReplyToMessageId(message.getMessageId());
-                            execute(sendMessage);
-                        }
-                        // if binary string is too large for audio conversion
-                        else {
-                            SendChatAction typing = new SendChatAction(message.getChatId(),
-                                    ActionType.TYPING.toString());
-                            execute(typing);
-                            SendMessage sendMessage = new SendMessage(message.getChatId(),
-                                    "String too large for binary request").setReplyToMessageId(message.getMessageId());
-                            execute(sendMessage);
-                        }
-                    } 
-                    catch (TelegramApiException | IOException | UnsupportedAudioFileException | EncoderException e)
-                    {
-                        LOGGER.log(Level.SEVERE, "Error in processing \"binary\" request", e);
-                    }
+                    // get random photos. sendPhoto is called repeatedly in getRandom()
+                    streams = Hecu.getInstance().getRandom(width, height, photoNumber, sendPhoto);
                 }
-                // bot consumes photo request
-                else if (set.removeIf(e -> e.getUser().equals(message.getFrom().getId()) && e.getType() == Type.PHOTO))
+                else
                 {
-                    LOGGER.log(Level.INFO, "\"photo\" request consumed in chat {0,number,#}\nRequest recap: {1}",
-                            new Object[]{ message.getChatId(), set });
-
-                	String query = message.getText().charAt(0)=='/' ? message.getText().substring(1) : message.getText();
-
-                	// the query limit point
-            		int index = query.lastIndexOf("//");
-
-            		// the number of photos requested
-            		int photoNumber;
+                    // get the photo based on the user specified query
+                    // sendPhoto is called repeatedly on getPhotos()
+                    // a photo request is counted for each Google Custom Search API call, cached pages are free
+                    // streams is null if the photo request limit is exceeded
+                    streams = Hecu.getInstance().getPhotos(query, photoNumber, sendPhoto, this::acquirePhotoRequest);
+                    LOGGER.log(Level.INFO, "Search cache recap: {0}", Hecu.getInstance().getSearchCacheRecap());
+                }
 
-            		try
+                // if photo request limit was not exceeded
+                if (streams != null)
+                {
+                    List<PhotoStream> photos = streams;
+                    try
                     {
-                        // if photo number not present in message, get the half of the photo group limit
-                        if (index==-1)
-                            photoNumber = PHOTO_GROUP_LIMIT/2;
-                        else
+                        // if no photo could be downloaded
+                        if (streams.isEmpty())
                         {
-                            // parse photo number and query
-                            photoNumber = Integer.parseInt(query.substring(index+2));
-                            query = query.substring(0,index);
+                            heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                            SendMessage sendMessage = new SendMessage(message.getChatId(),
+                                    messageProps.getProperty("hecu.error.photo.unavailable"))
+                                    .setReplyToMessageId(message.getMessageId());
+                            reply(message.getChatId(), sendMessage);
                         }
-
-                        // if photo number in range [1,n] (now n = 10)
-                        if (photoNumber>=1 && photoNumber<=PHOTO_GROUP_LIMIT)
+                        // if more than one photo was get (less than requested if the limit was exceeded meanwhile)
+                        else if (streams.size() > 1)
                         {
-                            SendChatAction sending = new SendChatAction(message.getChatId(),ActionType.UPLOADPHOTO.toString());
-
-                            // save upload photo action as Runnable
-                            // In this way, we can execute it anywhere so that the user is reassured that the bot is
-                            // working on the response
-                            Runnable sendPhoto = () -> {
-                                try
-                                {
-                                    execute(sending);
-                                } catch (TelegramApiException e)
-                                {
-                                    LOGGER.log(Level.SEVERE, "Error in processing \"photo\" request", e);
-                                }
-                            };
-                            List<PhotoStream> streams = null;
-
-                            // if the query specify a random photo request
-                            if (query.toLowerCase().startsWith("random"))
-                            {
-                                int width, height;
-
-                                // width start
-                                int start = query.indexOf('-');
-
-                                // if width is specified (we go to the first width character eg: -23 -> 2)
-                                if (start++ != -1)
-                                {
-                                    // height start
-                                    int end = query.lastIndexOf('-');
-
-                                    // if height is specified
-                                    if (start < end)
-                                    {
-                                        // parse width and height
-                                        width = Integer.parseInt(query.substring(start, end));
-                                        height = Integer.parseInt(query.substring(end + 1));
-                                    }
-                                    else
-                                    {
-                                        // parse width and set height as width
-                                        width = Integer.parseInt(query.substring(start));
-                                        height = width;
-                                    }
-                                }
-                                else
-                                    // use default random photo size
-                                    width = height = RANDOM_PHOTO_DEFAULT_SIZE;
-
-                                // get random photos. sendPhoto is called repeatedly in getRandom()
-                                streams = Hecu.getInstance().getRandom(width, height, photoNumber, sendPhoto);
-                            }
-                            else
-                            {
-                                // if one day as passed since the last photo (not random) request
-                                if (ChronoUnit.DAYS.between(today, LocalDate.now()) > 0)
-                                {
-                                    LOGGER.log(Level.INFO,"New day! Photo request counter with value {0,number,#} set to 0", photoRequests.get());
-                                    photoRequests.set(0);
-                                    // get the actual date
-                                    today = LocalDate.now();
-                                }
-
-                                // if photo request limit is not exceeded
-                                if (photoRequests.get() < MAX_PHOTO_REQUESTS)
-                                {
-                                    // get the photo based on the user specified query
-                                    // sendPhoto is called repeatedly on getPhotos()
-                                    streams = Hecu.getInstance().getPhotos(query, photoNumber, sendPhoto);
-                                    photoRequests.incrementAndGet();
-                                }
-                            }
-
-                            // if photo request limit was not exceeded
-                            if (streams != null)
-                            {
-                                // if more than one photo was requested
-                                if (photoNumber > 1)
-                                {
-                                    execute(sending);
-                                    @SuppressWarnings("rawtypes")
-                                    List<InputMedia> group = new ArrayList<>();
-                                    // add retrieved photos to a InputMediaGroup
-                                    streams.forEach(e -> group.add(new InputMediaPhoto().setMedia(e.getInput(), e.getName())));
-                                    SendMediaGroup mediaGroup = new SendMediaGroup(message.getChatId(),
-                                            group).setReplyToMessageId(message.getMessageId());
-                                    execute(mediaGroup);
-                                }
-                                else
-                                {
-                                    SendPhoto photo = new SendPhoto().setChatId(message.getChatId())
-                                            .setPhoto(streams.get(0).getName(),streams.get(0).getInput())
-                                            .setReplyToMessageId(message.getMessageId());
-                                    execute(photo);
-                                }
-
-                                // close the streams
-                                streams.forEach(e -> {
-                                    try
-                                    {
-                                        e.getInput().close();
-                                    } catch (IOException e1)
-                                    {
-                                        LOGGER.log(Level.SEVERE,"Error in closing streams in \"photo\" request", e1);
-                                    }
-                                });
-                            }
-                            // send photo exceeded error response
-                            else
-                            {
-                                SendChatAction typing = new SendChatAction(message.getChatId(),
-                                        ActionType.TYPING.toString());
-                                execute(typing);
-                                SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.error.photo.exceed"))
-                                        .setReplyToMessageId(message.getMessageId());
-                                execute(sendMessage);
-                            }
+                            @SuppressWarnings("rawtypes")
+                            List<InputMedia> group = new ArrayList<>();
+                            // add retrieved photos to a InputMediaGroup
+                            streams.forEach(e -> group.add(new InputMediaPhoto().setMedia(e.getInput(), e.getName())));
+                            SendMediaGroup mediaGroup = new SendMediaGroup(message.getChatId(),
+                                    group).setReplyToMessageId(message.getMessageId());
+                            // the photos are uploaded again if Telegram asks to retry
+                            send(message.getChatId(), () -> {
+                                rewind(photos);
+                                return execute(mediaGroup);
+                            });
                         }
-                        // if photo group limit is exceeded
                         else
                         {
-                            SendChatAction typing = new SendChatAction(message.getChatId(),
-                                    ActionType.TYPING.toString());
-                            execute(typing);
-                            SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.error.photo.limit").replaceFirst("\\$",PHOTO_GROUP_LIMIT+""))
+                            SendPhoto photo = new SendPhoto().setChatId(message.getChatId())
+                                    .setPhoto(streams.get(0).getName(),streams.get(0).getInput())
                                     .setReplyToMessageId(message.getMessageId());
-                            execute(sendMessage);
+                            send(message.getChatId(), () -> {
+                                rewind(photos);
+                                return execute(photo);
+                            });
                         }
                     }
-                    // if number in query cannot be parsed
-                    catch (NumberFormatException e)
+                    finally
                     {
-                        try
-                        {
-                            SendChatAction typing = new SendChatAction(message.getChatId(),
-                                    ActionType.TYPING.toString());
-                            execute(typing);
-                            SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.error.photo.malformed").replace("$",PHOTO_GROUP_LIMIT+""))
-                                    .setParseMode(ParseMode.HTML).setReplyToMessageId(message.getMessageId());
-                            execute(sendMessage);
-                        }
-                        catch (TelegramApiException e1)
-                        {
-                            LOGGER.log(Level.SEVERE,"Error in processing query error response to \"photo\" request", e1);
-                        }
-                    }
-                    catch (TelegramApiException | MalformedURLException | URISyntaxException e)
-                    {
-                        LOGGER.log(Level.SEVERE, "Error in processing \"photo\" request", e);
+                        // close the streams, releasing their buffers, even if the upload failed
+                        streams.forEach(e -> {
+                            try
+                            {
+                                e.close();
+                            } catch (IOException e1)
+                            {
+                                LOGGER.log(Level.SEVERE,"Error in closing streams in \"photo\" request", e1);
+                            }
+                        });
                     }
                 }
+                // send photo exceeded error response
+                else
+                {
+                    heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                    SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.error.photo.exceed"))
+                            .setReplyToMessageId(message.getMessageId());
+                    reply(message.getChatId(), sendMessage);
+                }
+            }
+            // if photo group limit is exceeded
+            else
+            {
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.error.photo.limit").replaceFirst("\\$",PHOTO_GROUP_LIMIT+""))
+                        .setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            }
+        }
+        // if number in query cannot be parsed
+        catch (NumberFormatException e)
+        {
+            try
+            {
+                heartbeat.start(message.getChatId(), ActionType.TYPING.toString());
+                SendMessage sendMessage = new SendMessage(message.getChatId(),messageProps.getProperty("hecu.error.photo.malformed").replace("$",PHOTO_GROUP_LIMIT+""))
+                        .setParseMode(ParseMode.HTML).setReplyToMessageId(message.getMessageId());
+                reply(message.getChatId(), sendMessage);
+            }
+            catch (TelegramApiException e1)
+            {
+                LOGGER.log(Level.SEVERE,"Error in processing query error response to \"photo\" request", e1);
             }
         }
+        catch (TelegramApiException | MalformedURLException | URISyntaxException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error in processing \"photo\" request", e);
+        }
     }
 
     /**
@@ -697,6 +883,176 @@ public class Bot extends TelegramLongPollingBot {
         return botProps.getProperty("bot.token");
     }
 
+    // send a voice reply to the message
+    // If the audio was already uploaded, it is sent by its Telegram file_id; otherwise it is taken from the voice
+    // cache or, at last, synthesized from the clips of the sentence, resolved only then.
+    // Return false if there was no audio to send
+    private boolean sendVoice(Message message, String key, Supplier<List<Clip>> sentence)
+            throws TelegramApiException, IOException
+    {
+        String fileId = voiceIndex.get(key);
+        if (fileId != null)
+        {
+            try
+            {
+                SendVoice voice = new SendVoice().setChatId(message.getChatId())
+                        .setReplyToMessageId(message.getMessageId()).setVoice(fileId);
+                send(message.getChatId(), () -> execute(voice));
+                return true;
+            }
+            // if Telegram does not accept the file_id anymore, upload the audio again
+            // any other error (e.g. network or flood limit) doesn't mean the file_id is not valid
+            catch (TelegramApiRequestException e)
+            {
+                if (!isWrongFileId(e))
+                    throw e;
+                LOGGER.log(Level.WARNING, "Voice file_id not accepted, uploading the audio again", e);
+                voiceIndex.remove(key);
+            }
+        }
+
+        byte[] ogg = voiceCache.get(key);
+        if (ogg == null)
+        {
+            // the clips are resolved only when the audio has to be built
+            List<Clip> clips = sentence.get();
+            // if there's nothing to say
+            if (clips.isEmpty())
+                return false;
+
+            // join the pre-encoded clips or encode the wav in ogg
+            if (segments != null)
+            {
+                long start = System.nanoTime();
+                ogg = segments.stitch(clips);
+                STITCH_LATENCY.recordSince(start);
+            }
+            else
+            {
+                AudioInputStream audio = Hecu.getInstance().assemble(clips);
+                long start = System.nanoTime();
+                ogg = encoder.encode(audio);
+                ENCODE_LATENCY.recordSince(start);
+            }
+            voiceCache.put(key, ogg);
+        }
+
+        // send the audio as voice, straight from memory
+        // the voice is built on each attempt, so a retry uploads the whole audio again
+        byte[] audio = ogg;
+        String filename = genFilename() + ".ogg";
+        Message sent = send(message.getChatId(), () -> execute(new SendVoice().setChatId(message.getChatId())
+                .setReplyToMessageId(message.getMessageId())
+                .setVoice(filename, new ByteArrayInputStream(audio))));
+
+        // record the file_id, so the next time the audio will not be uploaded
+        if (sent != null && sent.getVoice() != null)
+            voiceIndex.put(key, sent.getVoice().getFileId());
+        return true;
+    }
+
+    // check if Telegram refused a request because of a wrong file_id
+    // e.g. "Bad Request: wrong file identifier/HTTP URL specified"
+    private static boolean isWrongFileId(TelegramApiRequestException e)
+    {
+        return e.getErrorCode() != null && e.getErrorCode() == 400 && e.getApiResponse() != null
+                && e.getApiResponse().toLowerCase().contains("file");
+    }
+
+    // send a reply to a chat, ending the chat action shown until then
+    private <T extends Serializable, M extends BotApiMethod<T>> T reply(Long chatId, M method) throws TelegramApiException
+    {
+        return send(chatId, () -> execute(method));
+    }
+
+    // send a reply to a chat through the outbound scheduler, ending the chat action shown until then
+    // If Telegram asks to retry later, the chat is paused and the call repeated, so the call must be repeatable
+    private <T> T send(Long chatId, TelegramCall<T> call) throws TelegramApiException
+    {
+        heartbeat.stop(chatId);
+        for (int attempt = 1; ; attempt++)
+        {
+            long start = System.nanoTime();
+            try
+            {
+                outbound.acquire(chatId);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new TelegramApiException("Interrupted while waiting to send in chat " + chatId);
+            }
+            OUTBOUND_WAIT.recordSince(start);
+
+            start = System.nanoTime();
+            try
+            {
+                return call.execute();
+            }
+            catch (TelegramApiRequestException e)
+            {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                if (retryAfter == null || attempt >= MAX_SEND_ATTEMPTS)
+                    throw e;
+                Metrics.getInstance().increment("flood_limit_total");
+                LOGGER.log(Level.WARNING, "Flood limit in chat {0,number,#}, retry in {1} s\nOutbound recap: {2}",
+                        new Object[]{ chatId, retryAfter, outbound });
+                outbound.pause(chatId, retryAfter, TimeUnit.SECONDS);
+            }
+            finally
+            {
+                UPLOAD_LATENCY.recordSince(start);
+            }
+        }
+    }
+
+    // rewind the photos to their start, so they can be uploaded again
+    private static void rewind(List<PhotoStream> streams) throws TelegramApiException
+    {
+        try
+        {
+            for (PhotoStream stream : streams)
+                stream.getInput().reset();
+        }
+        catch (IOException e)
+        {
+            throw new TelegramApiException("Error rewinding the photos", e);
+        }
+    }
+
+    // send a chat action; runs on the heartbeat threads
+    private void sendAction(Long chatId, String action)
+    {
+        try
+        {
+            // an action is cosmetic: it is dropped if a reply would wait for it
+            if (outbound.tryAcquireAction(chatId))
+                execute(new SendChatAction(chatId, action));
+        }
+        catch (TelegramApiException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error in sending \"" + action + "\" chat action", e);
+        }
+    }
+
+    // confirm to Telegram the updates processed before a restart, so the polling resumes after the last one
+    // Requesting the updates from an offset confirms all the previous ones
+    private void resumeUpdates()
+    {
+        long last = journal.getLastUpdateId();
+        if (last == -1)
+            return;
+        try
+        {
+            execute(new GetUpdates().setOffset((int) (last + 1)).setLimit(1).setTimeout(0));
+            LOGGER.log(Level.INFO, "Polling resumed after update {0,number,#}", last);
+        }
+        catch (TelegramApiException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error confirming the updates processed before the restart", e);
+        }
+    }
+
     // generates a 10 char filename
     private String genFilename()
     {
@@ -708,28 +1064,41 @@ public class Bot extends TelegramLongPollingBot {
     	return sb.toString();
     }
 
-    // create a temp wav file from the given audio stream
-    // Name is generated through genFilename()
-    private Path createTempWavFile(AudioInputStream audio) throws IOException 
+    // count a Google Custom Search API call of a photo (not random) request if the daily limit is not exceeded
+    // Synchronized because chats are processed in parallel: the day change and the limit check must be atomic
+    private synchronized boolean acquirePhotoRequest()
     {
-    	Path temp = Files.createTempFile(genFilename(), ".wav");
-        AudioSystem.write(audio, javax.sound.sampled.AudioFileFormat.Type.WAVE, temp.toFile());
-        return temp;
+        // if one day as passed since the last photo (not random) request
+        if (ChronoUnit.DAYS.between(today, LocalDate.now()) > 0)
+        {
+            LOGGER.log(Level.INFO,"New day! Photo request counter with value {0,number,#} set to 0", photoRequests.get());
+            photoRequests.set(0);
+            // get the actual date
+            today = LocalDate.now();
+        }
+
+        if (photoRequests.get() < MAX_PHOTO_REQUESTS)
+        {
+            photoRequests.incrementAndGet();
+            return true;
+        }
+        Metrics.getInstance().increment("photo_quota_exceeded_total");
+        return false;
     }
 
-    // check if user is not in a request
-    private boolean isUserNotInRequest(Integer userId, Long chatId)
+    // remove the pending request of the user and return its type, null if the user is not in a request
+    private Type consumeRequest(Long chatId, Integer userId)
     {
-        Set<Request> set = requests.get(chatId);
-        
-        if (set==null)
-        	return true;
-        
-        return set.stream().noneMatch(e -> e.getUser().equals(userId));
+        Type type = requests.consume(chatId, userId);
+        if (type != null)
+            LOGGER.log(Level.INFO, "\"{0}\" request consumed in chat {1,number,#}\nRequest recap: {2}",
+                    new Object[]{ type.toString().toLowerCase(), chatId, requests });
+        return type;
     }
 
     // get the HECU word list
-    private String getWordList(List<String> words)
+    // package-private for the benchmarks
+    static String getWordList(List<String> words)
     {
     	StringBuilder sb = new StringBuilder();
     	int n = words.size();
@@ -1,10 +1,9 @@
 package com.demetrio.hecu;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -14,23 +13,27 @@ import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
 
 import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
@@ -42,11 +45,25 @@ import org.apache.tika.config.TikaConfig;
 import org.apache.tika.mime.MimeType;
 import org.apache.tika.mime.MimeTypeException;
 
+import com.demetrio.hecu.audio.Clip;
+import com.demetrio.hecu.audio.SentenceAssembler;
+import com.demetrio.hecu.audio.WordBank;
+import com.demetrio.hecu.audio.WordPack;
+import com.demetrio.hecu.cache.RandomPhotoPool;
+import com.demetrio.hecu.cache.SearchCache;
 import com.demetrio.hecu.exception.WordNotFoundException;
+import com.demetrio.hecu.image.ImageSniffer;
+import com.demetrio.hecu.image.PhotoBufferPool;
+import com.demetrio.hecu.metrics.LatencyHistogram;
+import com.demetrio.hecu.metrics.Metrics;
+import com.demetrio.hecu.text.PunctuationTable;
+import com.demetrio.hecu.text.Tokenizer;
+import com.demetrio.hecu.text.WordIndex;
 import com.demetrio.hecu.util.Binary;
 import com.demetrio.hecu.util.PhotoStream;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 /**
@@ -56,7 +73,7 @@ import com.google.gson.JsonObject;
  *     <li>{@link Hecu#getInstance() getInstance()} for getting the class instance</li>
  *     <li>{@link Hecu#say(String...) say(String...)} for <i>say</i> functionality</li>
  *     <li>{@link Hecu#sayBinary(String) sayBinary(String)} for <i>binary</i> functionality</li>
- *     <li>{@link Hecu#getPhotos(String, int, Runnable) getPhotos(String, int, Runnable)} for <i>photo</i> functionality</li>
+ *     <li>{@link Hecu#getPhotos(String, int, Runnable, BooleanSupplier) getPhotos(String, int, Runnable, BooleanSupplier)} for <i>photo</i> functionality</li>
  *     <li>{@link Hecu#getRandom(int, int, int, Runnable) getRandom(int, int, int, Runnable)} for random <i>photo</i> functionality</li>
  *     <li>{@link Hecu#getWords() getWords()} for <i>list</i> functionality</li>
  * </ul>
@@ -65,15 +82,39 @@ import com.google.gson.JsonObject;
  */
 public class Hecu {
 
+    /**
+     * The maximum length of a binary string that can be said, as returned by {@link #toBinary(String) toBinary(String)}:
+     * it bounds the size of the binary audio.
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static final int BINARY_LENGTH_LIMIT = 2500;
+
     // logger
     private static final Logger LOGGER = Logger.getLogger(Hecu.class.getName());
 
-    // instance
-    private static final Hecu INSTANCE = new Hecu();
+    // the latency of the synthesis and photo stages
+    private static final LatencyHistogram SYNTHESIS_LATENCY = Metrics.getInstance().getStage("synthesis");
+    private static final LatencyHistogram SEARCH_LATENCY = Metrics.getInstance().getStage("search");
+    private static final LatencyHistogram FETCH_LATENCY = Metrics.getInstance().getStage("fetch");
+    private static final LatencyHistogram DETECT_LATENCY = Metrics.getInstance().getStage("detect");
+
+    // instance holder: the instance is created at the first getInstance call,
+    // so the benchmarks can use the class without the real resources
+    private static final class Holder {
+        private static final Hecu INSTANCE = new Hecu();
+
+        // the photo pool refiller uses the instance, so it starts only once the instance is built
+        static {
+            INSTANCE.randomPool.start();
+        }
+    }
 
     // word directory path
     private static final String WORD_DIR_PATH = "/words";
 
+    // word pack path, built from the word directory at compile time
+    private static final String WORD_PACK_PATH = "/words.pack";
+
     // api properties file path
     private static final String API_PROPS_PATH = "/api.properties";
 
@@ -83,97 +124,209 @@ public class Hecu {
     // Google Custom Search API start point limit
     private static final int MAX_START = 90;
 
-    // binary String length limit
-    private static final int BINARY_LENGTH_LIMIT = 2500;
+    // image download connect and read timeout in milliseconds
+    private static final int FETCH_TIMEOUT = 10000;
+
+    // max size of an image accepted, Telegram photo upload limit
+    private static final long MAX_PHOTO_BYTES = 10 * 1024 * 1024;
+
+    // max size of an image kept in the random photo pool
+    private static final int MAX_POOLED_PHOTO = 5 * 1024 * 1024;
+
+    // max rounds of concurrent picsum requests for a random photo request
+    private static final int MAX_RANDOM_ATTEMPTS = 3;
 
     // Apache Tika configuration
     private static final TikaConfig TIKA_CONFIG = TikaConfig.getDefaultConfig();
 
-    // words audio Map
-    private final Map<String, byte[]> words;
+    // words audio bank
+    private final WordBank words;
+
+    // case-folded index of the words bank
+    private final WordIndex index;
+
+    // sentence assembler reading from the words bank
+    private final SentenceAssembler assembler;
 
     // api properties
     private final Properties props;
 
-    /**
-     * Enum representing a symbol:
-     * <ul>
-     *     <li>comma (',')</li>
-     *     <li>period ('.')</li>
-     * </ul>
-     * @author Alessandro Chiariello (Demetrio)
-     * @version 1.0
-     */
-    private enum Symbol {
-        COMMA, 
-        PERIOD
-    }
+    // pool of the image downloads
+    private final ExecutorService fetchPool;
+
+    // random images already downloaded
+    private final RandomPhotoPool randomPool;
+
+    // Google Custom Search API result pages already get
+    private final SearchCache searchCache;
+
+    // memory buffers of the downloaded images
+    private final PhotoBufferPool photoBuffers;
+
+    // single-pass tokenizer of the sentences
+    private final Tokenizer tokenizer;
+
+    // the clip of each punctuation symbol, null if the bank doesn't have it
+    private final Clip[] symbols;
 
     /**
      * Constructor called only once, eagerly. <br/>
-     * It stores in a {@link java.util.Map Map} the audio files, where:
+     * It maps the word pack (or, if there is no pack, decodes the audio files) in a {@link WordBank WordBank}, where:
      * <ul>
      *     <li>key is the word</li>
-     *     <li>value is a byte array representing the audio file</li>
+     *     <li>value is a {@link Clip Clip} indexing the word PCM data in the bank</li>
      * </ul>
      * It also loads the API properties, relative to Google Custom Search API and Picsum
      * @author Alessandro Chiariello (Demetrio)
      */
     private Hecu() {
-        words = new HashMap<>();
-        props = new Properties();
+        this(loadProps(), PunctuationTable.load());
+    }
+
+    // the bank also contains the silences of the punctuation table
+    private Hecu(Properties props, PunctuationTable punctuation) {
+        this(props, punctuation, loadWords(props, punctuation));
+    }
+
+    /**
+     * Construct a {@link Hecu Hecu} with the given API properties, punctuation and word bank. <br/>
+     * It is used by the benchmarks, that run on a synthetic word bank without the <i>/words</i> resources.
+     * @param props the API properties
+     * @param punctuation the punctuation table
+     * @param words the words audio bank, with the silences of the punctuation table
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    Hecu(Properties props, PunctuationTable punctuation, WordBank words) {
+        this.props = props;
+        this.words = words;
+        index = new WordIndex(words);
+        tokenizer = new Tokenizer(punctuation);
+
+        // resolve the punctuation clips once
+        symbols = new Clip[punctuation.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = words.get(punctuation.getClip(i));
+            if (symbols[i] == null)
+                LOGGER.log(Level.WARNING, "Punctuation \"{0}\" is not said, clip {1} not found",
+                        new Object[]{ punctuation.getPunctuation(i), punctuation.getClip(i) });
+        }
+        // the words are trimmed, so a short crossfade smooths the joins
+        assembler = new SentenceAssembler(words, parseCrossfade(props));
+
+        // the image downloads are I/O bound, so the pool can be much larger than the CPU cores
+        AtomicInteger count = new AtomicInteger();
+        fetchPool = Executors.newFixedThreadPool(Integer.parseInt(props.getProperty("photo.fetch.threads", "16").trim()), r -> {
+            Thread thread = new Thread(r, "hecu-fetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // the images are read in memory so their connection is released right away
+        photoBuffers = new PhotoBufferPool(MAX_PHOTO_BYTES, Long.parseLong(props.getProperty("photo.buffer.bytes", "67108864").trim()));
+
+        // the search results change slowly, so a page is kept for hours by default
+        searchCache = new SearchCache(Long.parseLong(props.getProperty("google.search.cache.ttl", "21600").trim()),
+                TimeUnit.SECONDS, Long.parseLong(props.getProperty("google.search.cache.bytes", "4194304").trim()));
+
+        // keep some random images of the common sizes ready (800x800 is the random photo default size)
+        randomPool = new RandomPhotoPool(this::loadRandom,
+                Arrays.asList(props.getProperty("photo.random.pool.sizes", "800x800").split(",")),
+                Integer.parseInt(props.getProperty("photo.random.pool.target", "10").trim()),
+                Long.parseLong(props.getProperty("photo.random.pool.bytes", "33554432").trim()));
+
+        // the cache hits and misses, to monitor the search quota and the downloads saved
+        Metrics.getInstance().gauge("search_cache_hits", searchCache::getHits);
+        Metrics.getInstance().gauge("search_cache_misses", searchCache::getMisses);
+        Metrics.getInstance().gauge("photo_pool_hits", randomPool::getHits);
+        Metrics.getInstance().gauge("photo_pool_misses", randomPool::getMisses);
+    }
+
+    // load the API props from api.properties file
+    private static Properties loadProps() {
+        Properties props = new Properties();
         // get and finally close the InputStream of api.properties
-        try (InputStream input = Hecu.class.getResourceAsStream(API_PROPS_PATH)) 
+        try (InputStream input = Hecu.class.getResourceAsStream(API_PROPS_PATH))
         {
-            // load the API props
             props.load(input);
+        }
+        // if props were not loaded correctly
+        catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error loading properties", e);
+        }
+        return props;
+    }
 
-            // get the audio files directory as URI
-            URI wordsURI = Hecu.class.getResource(WORD_DIR_PATH).toURI();
+    // get the crossfade between the words, failing with the property name if it's not valid
+    private static int parseCrossfade(Properties props) {
+        String value = props.getProperty("words.crossfade", "10").trim();
+        try {
+            int millis = Integer.parseInt(value);
+            if (millis >= 0)
+                return millis;
+        }
+        catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Property words.crossfade must be a non-negative number of milliseconds, found \""
+                + value + "\"");
+    }
 
-            // if the URI scheme is relative to a jar file (so the software is packaged), it creates a new FileSystem pointing
-            // to the directory; otherwise it doesn't do anything
-            // The filesystem is not used but it must be created so I can read the directory in the jar
-            try(FileSystem fileSystem = (wordsURI.getScheme().equals("jar") ? FileSystems.newFileSystem(wordsURI, Collections.emptyMap()) : null))
+    // map the word pack built at compile time in a WordBank, or decode the words directory if there's no pack
+    private static WordBank loadWords(Properties props, PunctuationTable punctuation) {
+        long start = System.nanoTime();
+        URL pack = Hecu.class.getResource(WORD_PACK_PATH);
+        if (pack != null) {
+            try {
+                // a pack inside the jar is copied once in a file, since only a file can be mapped
+                WordBank bank = WordPack.load(pack, Paths.get(props.getProperty("words.pack.path", "words.pack").trim()));
+                LOGGER.log(Level.INFO, "Word pack mapped in {0,number,#} ms: {1} words",
+                        new Object[]{ (System.nanoTime() - start) / 1_000_000, bank.getWords().size() });
+                return bank;
+            }
+            // if the pack can't be mapped, the words are decoded, if the directory is in the classpath
+            catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error mapping word pack, decoding the words directory", e);
+            }
+        }
+        WordBank bank = decodeWords(punctuation);
+        LOGGER.log(Level.INFO, "Words decoded in {0,number,#} ms: {1} words",
+                new Object[]{ (System.nanoTime() - start) / 1_000_000, bank.getWords().size() });
+        return bank;
+    }
+
+    // decode the audio files of the words directory in a WordBank
+    private static WordBank decodeWords(PunctuationTable punctuation) {
+        WordBank.Builder builder = new WordBank.Builder();
+        try
+        {
+            // get the audio files directory as URI
+            // the directory is not in the jar, since the pack contains the same audio
+            URL words = Hecu.class.getResource(WORD_DIR_PATH);
+            if (words == null)
+                LOGGER.severe("Words directory not found, no word can be said");
+            else
             {
-                // Walks the audio files directory
-                // This is the only case I know where there's need to close a Stream
-                // That's because it is relative to a opened system resource (the directory)
-            	try (Stream<Path> paths = Files.walk(Paths.get(wordsURI)))
+                URI wordsURI = words.toURI();
+
+                // if the URI scheme is relative to a jar file (so the software is packaged), it creates a new FileSystem pointing
+                // to the directory; otherwise it doesn't do anything
+                // The filesystem is not used but it must be created so I can read the directory in the jar
+                try(FileSystem fileSystem = (wordsURI.getScheme().equals("jar") ? FileSystems.newFileSystem(wordsURI, Collections.emptyMap()) : null))
                 {
-                    // Filters out the directories (in this case, only the parent directory)
-                    // Each file is processed
-                	paths.filter(Files::isRegularFile).forEach(e -> {
-                		String filename = e.getFileName().toString();
-                		// get the question mark position in the audio filename
-                        // If a word audio name has a question mark, it is in caps lock (heavy! -> HEAVY)
-                		int mark = filename.indexOf('!');
-
-                		// if there's a question mark in the filename, the word name is converted to UPPERCASE
-                        // (without question mark). In each case, the file extension is removed.
-                        // e.g. ass.wav -> ass, ass!.wav -> ASS
-                        String name = mark != -1 ? filename.substring(0, mark).toUpperCase()
-                                : filename.substring(0, filename.indexOf('.'));
-						try
-						{
-						    // put in the words Map a pair: k = word, v = audio bytes
-                            // It uses the Files class to read all the bytes from the Path
-                            // representing the audio file.
-							words.put(name, Files.readAllBytes(e));
-						}
-						// if a word was not read correctly
-						catch (IOException e1)
-						{
-							LOGGER.log(Level.SEVERE, "Error loading word audio file in memory", e1);
-						}
-                	});
+                    // decode each audio file of the directory and add it to the bank
+                    WordPack.addWords(builder, Paths.get(wordsURI));
                 }
             }
         }
-        // if props were not loaded correctly or the URI syntax is wrong
+        // if the words directory can't be read or the URI syntax is wrong
         catch (IOException | URISyntaxException e) {
-            LOGGER.log(Level.SEVERE, "Error loading properties or URI syntax not correct", e);
+            LOGGER.log(Level.SEVERE, "Error loading words or URI syntax not correct", e);
         }
+        // add the silences played for the punctuation
+        punctuation.getSilences().forEach(builder::addSilence);
+
+        // copy the decoded words in the bank buffer
+        return builder.build();
     }
 
     /**
@@ -182,129 +335,168 @@ public class Hecu {
      * @author Alessandro Chiariello (Demetrio)
      */
     public static Hecu getInstance() {
-        return INSTANCE;
+        return Holder.INSTANCE;
     }
 
     /**
      * Get the audio stream from a variable array of words. <br/>
-     * The method extract from the audio {@link java.util.Map Map} each word and
+     * The method extract from the audio {@link WordBank WordBank} each word and
      * concatenate them in a single {@link AudioInputStream AudioInputStream}, representing the sentence. <br/>
+     * Every word is resolved before any audio is built, then the sentence is assembled in a single pass
+     * by the {@link SentenceAssembler SentenceAssembler}. <br/>
      * It throws a {@link WordNotFoundException WordNotFoundException} if one word was not found.
      * @param words a variable array of words, passed as multiple parameters
      * @return the audio stream of the sentence, {@code null} if {@code words} is {@code null} or empty
-     * @throws IOException - if there's an error reading an audio from the map
+     * @throws IOException - if there's an error reading an audio from the bank
      * @throws UnsupportedAudioFileException - if an audio is not supported
      * @author Alessandro Chiariello (Demetrio)
      */
     public AudioInputStream say(String... words) throws IOException, UnsupportedAudioFileException {
         // if words is null or empty
         if (words != null && words.length > 0) {
-            AudioInputStream audio;
-            String word;
-            byte[] file;
-            // if the first word ends with a comma
-            if (words[0].endsWith(",")) {
-                // get the word String without the comma
-                word = words[0].substring(0, words[0].length() - 1);
-
-                // get the audio byte array from the word
-                file = getWordFile(word);
-
-                // if there isn't a file for the word, throws WordNotFoundException
-                if (file == null)
-                    throw new WordNotFoundException("Word \"" + word + "\" not found");
-
-                // concatenates the word audio and the comma audio
-                // It reads the byte array as a ByteArrayInputStream, so it will be treated as a normal InputStream
-                // The comma byte array will be also be treated as an InputStream (in the appendSymbol() method)
-                audio = appendSymbol(AudioSystem.getAudioInputStream(new ByteArrayInputStream(file)), Symbol.COMMA);
-
-            // if it ends with period
-            } else if (words[0].endsWith(".")) {
-
-                // do the same of above
-                word = words[0].substring(0, words[0].length() - 1);
-                file = getWordFile(word);
-                if (file == null)
-                    throw new WordNotFoundException("Word \"" + word + "\" not found");
-                audio = appendSymbol(AudioSystem.getAudioInputStream(new ByteArrayInputStream(file)), Symbol.PERIOD);
-            // otherwise
-            } else {
-                // get the word normally and do the same described previously
-                word = words[0];
-                file = getWordFile(word);
-                if (file == null)
-                    throw new WordNotFoundException("Word \"" + word + "\" not found");
-                audio = AudioSystem.getAudioInputStream(new ByteArrayInputStream(file));
-            }
-
-            // processes every word and do the concatenation
-            for (int i = 1; i < words.length; i++) {
-                AudioInputStream audio2;
-                // with the same method above, get the other word
-                if (words[i].endsWith(",")) {
-                    word = words[i].substring(0, words[i].length() - 1);
-                    file = getWordFile(word);
-                    if (file == null)
-                        throw new WordNotFoundException("Word \"" + word + "\" not found");
-                    audio2 = appendSymbol(AudioSystem.getAudioInputStream(new ByteArrayInputStream(file)), Symbol.COMMA);
-                } else if (words[i].endsWith(".")) {
-                    word = words[i].substring(0, words[i].length() - 1);
-                    file = getWordFile(word);
-                    if (file == null)
-                        throw new WordNotFoundException("Word \"" + word + "\" not found");
-                    audio2 = appendSymbol(AudioSystem.getAudioInputStream(new ByteArrayInputStream(file)), Symbol.PERIOD);
-                } else {
-                    word = words[i];
-                    file = getWordFile(word);
-                    if (file == null)
-                        throw new WordNotFoundException("Word \"" + word + "\" not found");
-                    audio2 = AudioSystem.getAudioInputStream(new ByteArrayInputStream(file));
-                }
-                // concatenate the previous word with the new word
-                // we can use a SequenceInputStream because wav is uncompressed
-                audio = new AudioInputStream(new SequenceInputStream(audio, audio2), audio.getFormat(),
-                        audio.getFrameLength() + audio2.getFrameLength());
-            }
             // get the sentence
-            return audio;
+            return assemble(getClips(words));
         }
         return null;
     }
 
+    /**
+     * Get the normalized form of a sentence: its words and the names of its symbol clips, separated by a space. <br/>
+     * It applies the same tokenization and case rules of {@link #say(String...) say(String...)},
+     * so two sentences with the same normalized form have the same audio (e.g. <i>Move, move</i> and <i>move; mOvE</i>). <br/>
+     * The words are not looked up, so the form is cheap to get, e.g. to find an audio already built,
+     * but it doesn't tell if the sentence can be said.
+     * @param words a variable array of words, passed as multiple parameters
+     * @return the normalized sentence, empty if {@code words} is {@code null} or empty
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String normalize(String... words) {
+        KeyBuilder builder = new KeyBuilder();
+        if (words != null) {
+            for (String word : words)
+                tokenizer.tokenize(word, builder);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get the normalized form of a sentence, as in {@link #normalize(String...) normalize(String...)}.
+     * @param sentence the text containing the sentence
+     * @param start the start index of the sentence, inclusive
+     * @param end the end index of the sentence, exclusive
+     * @return the normalized sentence, empty if the sentence has nothing to say
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String normalize(CharSequence sentence, int start, int end) {
+        KeyBuilder builder = new KeyBuilder();
+        tokenizer.tokenize(sentence, start, end, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Get the normalized form of a sentence from its clips, that is the names of the clips separated by a space.
+     * @param clips the clips, as returned by {@link #getClips(CharSequence, int, int) getClips(CharSequence, int, int)}
+     * @return the normalized sentence
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String normalize(List<Clip> clips) {
+        StringBuilder sb = new StringBuilder();
+        for (Clip clip : clips) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(clip.getName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the clips to play for a variable array of words, in order. <br/>
+     * Each word is tokenized as in {@link #getClips(CharSequence, int, int) getClips(CharSequence, int, int)},
+     * so a word ending with a punctuation (e.g. a comma or period) is followed by the symbol clip. <br/>
+     * It throws a {@link WordNotFoundException WordNotFoundException} with every word not found,
+     * each with the closest known words.
+     * @param words a variable array of words, passed as multiple parameters
+     * @return the clips of the sentence
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public List<Clip> getClips(String... words) {
+        Resolver resolver = new Resolver(words.length * 2);
+        for (String word : words)
+            tokenizer.tokenize(word, resolver);
+        return resolver.getClips();
+    }
+
+    /**
+     * Get the clips to play for a sentence, in order. <br/>
+     * The sentence is read once by the {@link Tokenizer Tokenizer}: the words are separated by whitespace
+     * or punctuation, and each punctuation of the <i>punctuation.properties</i> table plays its symbol clip or silence.
+     * Every word is resolved, so no audio has to be built to know if the sentence can be said. <br/>
+     * It throws a {@link WordNotFoundException WordNotFoundException} with every word not found,
+     * each with the closest known words.
+     * @param sentence the text containing the sentence
+     * @param start the start index of the sentence, inclusive
+     * @param end the end index of the sentence, exclusive
+     * @return the clips of the sentence
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public List<Clip> getClips(CharSequence sentence, int start, int end) {
+        Resolver resolver = new Resolver(16);
+        tokenizer.tokenize(sentence, start, end, resolver);
+        return resolver.getClips();
+    }
+
+    /**
+     * Get the clips to play for a binary string (one clip for each digit, spaces are ignored).
+     * @param binary the binary string, as returned by {@link #toBinary(String) toBinary(String)}
+     * @return the clips of the binary string
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public List<Clip> getBinaryClips(String binary) {
+        Clip zero = words.get("ZERO");
+        Clip one = words.get("ONE");
+
+        // get the digits audio
+        List<Clip> clips = new ArrayList<>(binary.length());
+        for (int i = 0; i < binary.length(); i++) {
+            // if it's a space, ignore this character
+            if (Character.isWhitespace(binary.charAt(i)))
+                continue;
+            clips.add(binary.charAt(i) == '0' ? zero : one);
+        }
+        return clips;
+    }
+
+    /**
+     * Concatenate clips in a single {@link AudioInputStream AudioInputStream}, through the
+     * {@link SentenceAssembler SentenceAssembler}.
+     * @param clips the clips, as returned by {@link #getClips(String...) getClips(String...)}
+     *              or {@link #getBinaryClips(String) getBinaryClips(String)}
+     * @return the audio stream, {@code null} if {@code clips} is empty
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public AudioInputStream assemble(List<Clip> clips) {
+        long start = System.nanoTime();
+        AudioInputStream audio = assembler.assemble(clips);
+        SYNTHESIS_LATENCY.recordSince(start);
+        return audio;
+    }
+
     /**
      * Get a {@link Binary Binary} object containing the binary audio and string, constructed from a
      * quote passed as parameter.
      * @param quote the quote
-     * @return a Binary object constructed from the quote
-     * @throws IOException - if there's an error reading an audio from the map
+     * @return a Binary object constructed from the quote, {@code null} if the quote is empty
+     *      or its binary string is longer than {@link #BINARY_LENGTH_LIMIT BINARY_LENGTH_LIMIT}
+     * @throws IOException - if there's an error reading an audio from the bank
      * @throws UnsupportedAudioFileException - if an audio is not supported
      * @author Alessandro Chiariello (Demetrio)
      */
     public Binary sayBinary(String quote) throws IOException, UnsupportedAudioFileException {
         // convert the quote to binary
         String binary = toBinary(quote);
-        // to prevent StackOverflowError
-        if (binary.length() <= BINARY_LENGTH_LIMIT) {
-            // get the first binary digit as audio
-            AudioInputStream audio = binary.charAt(0) == '0' ? AudioSystem.getAudioInputStream(new ByteArrayInputStream(words.get("ZERO")))
-                    : AudioSystem.getAudioInputStream(new ByteArrayInputStream(words.get("ONE")));
-            // processes the other digits
-            for (int i = 1; i < binary.length(); i++) {
-                // if it's a space, ignore this character
-                if (Character.isWhitespace(binary.charAt(i)))
-                    continue;
-
-                // get the digit audio
-                AudioInputStream audio2 = binary.charAt(i) == '0' ? AudioSystem.getAudioInputStream(new ByteArrayInputStream(words.get("ZERO")))
-                        : AudioSystem.getAudioInputStream(new ByteArrayInputStream(words.get("ONE")));
-
-                // concatenate the previous digit with the new digit
-                audio = new AudioInputStream(new SequenceInputStream(audio, audio2), audio.getFormat(),
-                        audio.getFrameLength() + audio2.getFrameLength());
-            }
+        if (!binary.isEmpty() && binary.length() <= BINARY_LENGTH_LIMIT) {
             // return the Binary object with binary string and audio
-            return new Binary(binary, audio);
+            return new Binary(binary, assemble(getBinaryClips(binary)));
         }
         return null;
     }
@@ -313,9 +505,12 @@ public class Hecu {
      * Get a {@link List List} of images based on the query search string.<br/>
      * The number of images is determined by {@code limit}.<br/>
      * The images are searched through <i>Google Custom Search API</i>, that returns a JSON with
-     * the links to the images. Then an {@link URLConnection URLConnection} to each link is opened and
+     * the links to the images. The links of each result page are cached for a while, so a repeated query
+     * begins from a cached page and doesn't use API quota. Then an {@link URLConnection URLConnection} to each link is opened and
      * the respective {@link InputStream InputStream} is saved, with a name, in a {@link PhotoStream PhotoStream}
      * object.<br/>
+     * The links of a result page are downloaded concurrently: the method goes on as soon as enough images
+     * are valid, cancelling the downloads still in flight.<br/>
      * If an image has an unsupported extension (like svg), it is discarded.<br/>
      * The method execute constantly the {@link Runnable Runnable} passed as parameter, that execute a
      * {@link org.telegram.telegrambots.meta.api.methods.send.SendChatAction SendChatAction} of type
@@ -324,18 +519,25 @@ public class Hecu {
      * @param limit the number of images to get
      * @param sendPhoto the @link org.telegram.telegrambots.meta.api.methods.send.SendChatAction SendChatAction} of
      *                  type <i>UPLOAD_PHOTO</i> to constantly run
+     * @param quota called before each <i>Google Custom Search API</i> request, it counts the request
+     *              and returns {@code false} if the daily quota is exceeded
      * @return a {@link List List} of {@link PhotoStream} containing the {@link InputStream InputStream} and name of
-     *      the images
+     *      the images (less than {@code limit} if the quota was exceeded), {@code null} if the quota was exceeded
+     *      before any image was get
      * @throws URISyntaxException if <i>Google Custom Search API</i> URI is malformed
      * @see PhotoStream PhotoStream
      * @see org.telegram.telegrambots.meta.api.methods.send.SendChatAction SendChatAction
      * @author Alessandro Chiariello (Demetrio)
      */
-    public List<PhotoStream> getPhotos(String query,int limit, Runnable sendPhoto) throws URISyntaxException {
+    public List<PhotoStream> getPhotos(String query, int limit, Runnable sendPhoto, BooleanSupplier quota) throws URISyntaxException {
     	Random random = new Random();
     	List<PhotoStream> photos = new ArrayList<>();
-    	// search start position
-    	int start = random.nextInt(MAX_START)+1;
+    	// the cache is shared among the users, so the query is normalized
+    	String normalized = SearchCache.normalize(query);
+    	// search start position: a page already cached, if any, otherwise a random one
+    	int start = searchCache.getStart(normalized);
+    	if (start == -1)
+    	    start = random.nextInt(MAX_START)+1;
 
     	// while I didn't get all the photos
         while (photos.size()<limit)
@@ -343,98 +545,98 @@ public class Hecu {
             // run the execute SendChatAction of type UPLOAD_PHOTO
         	sendPhoto.run();
 
-        	// create a new REST API Client
-        	Client client = ClientBuilder.newClient();
-
-        	// construct the URI to Google Custom Search API
-            // properties are taken from api.properties file
-            // google.search.query prop is formatted automatically
-            // and query and start part are replaced
-			URI uri = new URI(props.getProperty("google.search.scheme"), null, 
-					props.getProperty("google.search.host"), -1, 
-					props.getProperty("google.search.path"), props.getProperty("google.search.query")
-					.replace(":query:",query).replace(":start:",start + ""), null);
-			WebTarget target = client.target(uri);
-
-			// through Gson, the JSON result is converted in a JsonObject and the items are get
-	    	JsonArray items = new Gson().fromJson(target.request(MediaType.APPLICATION_JSON).get(String.class),JsonObject.class).get("items").getAsJsonArray();
-
-	    	// while some item has not been processed and not all photos has been get
-	    	while(items.size()>0 && photos.size()<limit)
-	        {
-	    		sendPhoto.run();
-	    		try
-	    		{
-	    		    // create an URL from the link of a random item that is removed
-	    			URL image = new URL(items.remove(random.nextInt(items.size())).getAsJsonObject().get("link").getAsString());
-
-	    			// open a connection to the image URL
-		            URLConnection conn = image.openConnection();
-
-		            // set the User-Agent so the server where the image is stored does not complain
-		            conn.setRequestProperty("User-Agent", USER_AGENT);
-
-		            // if the URL is not an HTTP URL, cannot verify the status code so proceed
-                    // if the URL is an HTTP URL, verify that the response code is OK (200) and then proceed
-		            if (!(conn instanceof HttpURLConnection) || ((HttpURLConnection)conn).getResponseCode()==200)
-		            {
-                        sendPhoto.run();
+        	// the links of the result page, searched only if not cached
+        	List<String> items = searchCache.get(normalized, start);
+        	if (items == null)
+        	{
+        	    // daily quota exceeded
+        	    if (!quota.getAsBoolean())
+        	        break;
+        	    items = search(normalized, start);
+        	    searchCache.put(normalized, start, items);
+        	}
+
+	    	// the links of the items, in random order
+	    	List<URL> links = new ArrayList<>(items.size());
+	    	for (String link : items)
+	    	{
+	    	    try
+	    	    {
+	    	        links.add(new URL(link));
+	    	    }
+	    	    catch (MalformedURLException e)
+	    	    {
+	    	        LOGGER.log(Level.SEVERE, "Error creating URL from Google Custom Search API item", e);
+	    	    }
+	    	}
+	    	Collections.shuffle(links, random);
+
+	    	// download the links concurrently, until the missing photos are get
+	    	for (PhotoStream photo : fetchAll(links, limit - photos.size(), sendPhoto))
+	    	{
+	    	    // set the image name (the fetched name is the extension)
+	    	    photo.setName(query + photos.size() + photo.getName());
+	    	    photos.add(photo);
+	    	}
 
-                        // wraps the resource InputStream in a BufferedInputStream so it can be passed
-                        // to Tika#detect() method for Mime type detection.
-                        // BufferedInputStream support reset method so Tika can reset it to the initial
-                        // position
-		            	BufferedInputStream input = new BufferedInputStream(conn.getInputStream());
-						try
-						{
-						    // detect the Mime type string and get the respective MimeType object from the
-                            // Mime repository
-							MimeType mime = TIKA_CONFIG.getMimeRepository().forName(new Tika().detect(input));
-
-							// if the Type of the Mime type is an image
-							if (mime.getType().getType().equals("image"))
-			            	{
-			            	    // get the Mime type Subtype
-								String subType = mime.getType().getSubtype();
-
-								// Telegram support only jpeg, png and webp for images
-                                // Check if the Subtype is supported
-								if (subType.equals("jpeg") || subType.equals("png") || subType.equals("webp"))
-								{
-				            		sendPhoto.run();
-			            			PhotoStream photo = new PhotoStream();
-			            			// set the image name
-				            		photo.setName(query + photos.size() + mime.getExtension());
-				            		// set the InputStream
-				            		photo.setInput(input);
-				            		// add the PhotoStream to the List
-				            		photos.add(photo);
-								}
-			            	}
-						}
-						// if MimeType was not found in the repository
-						catch (MimeTypeException e)
-						{
-							LOGGER.log(Level.SEVERE, "Error finding MimeType from Mime repository", e);
-						}
-		            }
-	    		}
-	    		// if there's some error opening the URL connection or getting its InputStream
-	    		catch (IOException e)
-	    		{
-	    			LOGGER.log(Level.SEVERE, "Error opening URL connection or getting URL InputStream", e);
-	    		}
-	        }
 	    	// go to the next starting point. Resetted if on the last starting point
         	start = (start+10) % (MAX_START+1);
         }
-        return photos;
+        return photos.isEmpty() ? null : photos;
+    }
+
+    /**
+     * Get the recap of the <i>Google Custom Search API</i> result pages cache.
+     * @return the string representation of the {@link SearchCache SearchCache}
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String getSearchCacheRecap() {
+        return searchCache.toString();
+    }
+
+    // make a request to Google Custom Search API and return the image links of the result page
+    private List<String> search(String query, int start) throws URISyntaxException
+    {
+        // create a new REST API Client
+        Client client = ClientBuilder.newClient();
+
+        // construct the URI to Google Custom Search API
+        // properties are taken from api.properties file
+        // google.search.query prop is formatted automatically
+        // and query and start part are replaced
+        URI uri = new URI(props.getProperty("google.search.scheme"), null,
+                props.getProperty("google.search.host"), -1,
+                props.getProperty("google.search.path"), props.getProperty("google.search.query")
+                .replace(":query:",query).replace(":start:",start + ""), null);
+        WebTarget target = client.target(uri);
+
+        // through Gson, the JSON result is converted in a JsonObject and the items are get
+        JsonArray items;
+        long begin = System.nanoTime();
+        try
+        {
+            items = new Gson().fromJson(target.request(MediaType.APPLICATION_JSON).get(String.class),JsonObject.class).get("items").getAsJsonArray();
+        }
+        finally
+        {
+            SEARCH_LATENCY.recordSince(begin);
+            client.close();
+        }
+
+        // keep only the links of the items
+        List<String> links = new ArrayList<>(items.size());
+        for (JsonElement item : items)
+            links.add(item.getAsJsonObject().get("link").getAsString());
+        return links;
     }
 
     /**
      * Get a {@link List List} of random images with specified {@code width} and {@code height}.<br/>
      * The number of images is determined by {@code limit}.<br/>
-     * The images are get by making a request URL to picsum API, that returns a random image.
+     * The images are taken first from the pool of random images already downloaded in background, if the size is pooled.
+     * The missing ones are get by making a request URL to picsum API, that returns a random image.
+     * The requests are made concurrently, one for each missing image, for at most three rounds: if picsum keeps failing,
+     * fewer images are returned.
      * If an image has an unsupported extension (like svg), it is discarded.<br/>
      * The method execute constantly the {@link Runnable Runnable} passed as parameter, that execute a
      * {@link org.telegram.telegrambots.meta.api.methods.send.SendChatAction SendChatAction} of type
@@ -444,7 +646,8 @@ public class Hecu {
      * @param limit the number of images to get
      * @param sendPhoto he @link org.telegram.telegrambots.meta.api.methods.send.SendChatAction SendChatAction} of
      *          type <i>UPLOAD_PHOTO</i> to constantly run
-     * @return a {@link List List} of {@link PhotoStream} containing the {@link InputStream InputStream} and name of the images
+     * @return a {@link List List} of {@link PhotoStream} containing the {@link InputStream InputStream} and name of the images,
+     *          empty if no image could be downloaded
      * @throws URISyntaxException if the URI is malformed
      * @throws MalformedURLException if the URL derived by the URI is malformed
      * @see PhotoStream PhotoStream
@@ -455,61 +658,318 @@ public class Hecu {
     {
         List<PhotoStream> photos = new ArrayList<>();
 
-        // while I didn't get all the photos
-        while (photos.size() < limit)
+        // serve the images already downloaded first
+        PhotoStream pooled;
+        while (photos.size() < limit && (pooled = randomPool.poll(width, height)) != null)
+        {
+            pooled.setName(photos.size() + pooled.getName());
+            photos.add(pooled);
+        }
+
+        // the picsum URL of the size
+        URL image = getRandomURL(width, height);
+
+        // while I didn't get all the photos, for a bounded number of rounds
+        for (int attempt = 1; photos.size() < limit && attempt <= MAX_RANDOM_ATTEMPTS; attempt++)
         {
             sendPhoto.run();
 
-            // construct an URI to the picsum API
-            // properties are taken from api.properties file
-            URI uri = new URI(props.getProperty("picsum.scheme"), null, props.getProperty("picsum.host"),
-                    -1, props.getProperty("picsum.path").replace(":width:",width + "")
-                    .replace(":height:",height + ""), null, null);
+            // every request returns a different random image, so request all the missing photos concurrently
+            List<URL> links = Collections.nCopies(limit - photos.size(), image);
+            List<PhotoStream> fetched = fetchAll(links, links.size(), sendPhoto);
+            for (PhotoStream photo : fetched)
+            {
+                photo.setName(photos.size() + photo.getName());
+                photos.add(photo);
+            }
 
-            // convert the URI to URL
-            URL image = uri.toURL();
-            try
+            // if no request succeeded, picsum is likely not available
+            if (fetched.isEmpty())
+                break;
+        }
+        if (photos.size() < limit)
+            LOGGER.log(Level.WARNING, "Only {0} of {1} random photos downloaded", new Object[]{ photos.size(), limit });
+        return photos;
+    }
+
+    // construct an URL to the picsum API for a random image of the given size
+    // properties are taken from api.properties file
+    private URL getRandomURL(int width, int height) throws URISyntaxException, MalformedURLException
+    {
+        URI uri = new URI(props.getProperty("picsum.scheme"), null, props.getProperty("picsum.host"),
+                -1, props.getProperty("picsum.path").replace(":width:",width + "")
+                .replace(":height:",height + ""), null, null);
+
+        // convert the URI to URL
+        return uri.toURL();
+    }
+
+    // download a random image for the random photo pool, reading it fully in memory
+    // null if the image could not be downloaded or it's not valid
+    private RandomPhotoPool.Photo loadRandom(int width, int height)
+    {
+        try
+        {
+            PhotoStream photo = fetch(getRandomURL(width, height), () -> {});
+            if (photo == null)
+                return null;
+            try (InputStream input = photo.getInput())
             {
-                // open the connection to the image URL
-                URLConnection conn = image.openConnection();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = input.read(buf)) != -1)
+                {
+                    out.write(buf, 0, n);
+                    // an image too large is not worth keeping in memory
+                    if (out.size() > MAX_POOLED_PHOTO)
+                        return null;
+                }
+                return new RandomPhotoPool.Photo(out.toByteArray(), photo.getName());
+            }
+        }
+        catch (IOException | URISyntaxException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error downloading random photo for the pool", e);
+            return null;
+        }
+    }
 
-                // set the User-Agent so the server where the image is present does not complain
-                conn.setRequestProperty("User-Agent", USER_AGENT);
+    // download the images concurrently on the fetch pool and return as soon as limit images are valid
+    // The downloads still in flight are cancelled and the images arrived late are closed.
+    // The name of the returned PhotoStream objects is the image extension
+    private List<PhotoStream> fetchAll(List<URL> links, int limit, Runnable sendPhoto)
+    {
+        PhotoCollector collector = new PhotoCollector(limit, links.size());
+        List<Future<?>> futures = new ArrayList<>(links.size());
+        for (URL link : links)
+        {
+            futures.add(fetchPool.submit(() -> {
+                try
+                {
+                    PhotoStream photo = fetch(link, sendPhoto);
+                    // if the photo is not needed anymore, release the connection
+                    if (photo != null && !collector.offer(photo))
+                        close(photo);
+                }
+                finally
+                {
+                    collector.done();
+                }
+            }));
+        }
+
+        try
+        {
+            return collector.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return collector.close();
+        }
+        finally
+        {
+            // cancel the downloads still in flight
+            futures.forEach(f -> f.cancel(true));
+        }
+    }
 
-                // if it alright (like in getPhotos() method)
-                if (!(conn instanceof HttpURLConnection) || ((HttpURLConnection)conn).getResponseCode()==200)
+    // download an image and check that its type is supported by Telegram (jpeg, png and webp)
+    // return null if the image is not valid. The name of the returned PhotoStream is the image extension
+    private PhotoStream fetch(URL image, Runnable sendPhoto)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return download(image, sendPhoto);
+        }
+        finally
+        {
+            FETCH_LATENCY.recordSince(start);
+        }
+    }
+
+    // the body of fetch(URL, Runnable)
+    private PhotoStream download(URL image, Runnable sendPhoto)
+    {
+        try
+        {
+            // open a connection to the image URL
+            URLConnection conn = image.openConnection();
+
+            // set the User-Agent so the server where the image is stored does not complain
+            conn.setRequestProperty("User-Agent", USER_AGENT);
+
+            // a slow host must not hold a fetch thread forever
+            conn.setConnectTimeout(FETCH_TIMEOUT);
+            conn.setReadTimeout(FETCH_TIMEOUT);
+
+            // if the URL is not an HTTP URL, cannot verify the status code so proceed
+            // if the URL is an HTTP URL, verify that the response code is OK (200) and then proceed
+            if (conn instanceof HttpURLConnection && ((HttpURLConnection)conn).getResponseCode()!=200)
+            {
+                ((HttpURLConnection) conn).disconnect();
+                return null;
+            }
+
+            // reject from the headers, before reading the body, what is surely not a supported image
+            if (!ImageSniffer.acceptHeaders(conn.getContentType(), conn.getContentLengthLong(), MAX_PHOTO_BYTES))
+            {
+                if (conn instanceof HttpURLConnection)
+                    ((HttpURLConnection) conn).disconnect();
+                return null;
+            }
+
+            // wraps the resource InputStream in a BufferedInputStream so the first bytes can be read
+            // for the format detection and then reset to the initial position
+            // the connection is always released at the end: a valid image is copied in memory
+            try (BufferedInputStream input = new BufferedInputStream(conn.getInputStream(), ImageSniffer.HEADER_LENGTH))
+            {
+                input.mark(ImageSniffer.HEADER_LENGTH);
+                byte[] header = new byte[ImageSniffer.HEADER_LENGTH];
+                int length = 0;
+                int n;
+                while (length < header.length && (n = input.read(header, length, header.length - length)) != -1)
+                    length += n;
+                input.reset();
+
+                // Telegram support only jpeg, png and webp for images
+                String extension = null;
+                ImageSniffer.Image sniffed = ImageSniffer.sniff(header, length);
+                if (sniffed != null)
                 {
-                    // do the same procedure as the getPhotos() method
-                    // ------------------------------------------------
-                    BufferedInputStream input = new BufferedInputStream(conn.getInputStream());
-                    try
-                    {
-                        MimeType mime = TIKA_CONFIG.getMimeRepository().forName(new Tika().detect(input));
-                        if (mime.getType().getType().equals("image"))
-                        {
-                            String subType = mime.getType().getSubtype();
-                            if (subType.equals("jpeg") || subType.equals("png") || subType.equals("webp"))
-                            {
-                                sendPhoto.run();
-                                PhotoStream photo = new PhotoStream();
-                                photo.setName(photos.size() + mime.getExtension());
-                                photo.setInput(input);
-                                photos.add(photo);
-                            }
-                        }
-                    } catch (MimeTypeException e)
+                    if (sniffed.isUsable())
+                        extension = sniffed.getFormat().getExtension();
+                }
+                // unknown format: fall back to Tika
+                else if (!ImageSniffer.isUnsupported(header, length))
+                    extension = detect(input);
+
+                if (extension != null)
+                {
+                    // read the image in the buffer pool (null if too large or out of memory budget)
+                    InputStream buffered = photoBuffers.read(input);
+                    if (buffered != null)
                     {
-                        LOGGER.log(Level.SEVERE, "Error finding MimeType from Mime repository", e);
+                        sendPhoto.run();
+                        PhotoStream photo = new PhotoStream();
+                        // set the image extension, the caller completes the name
+                        photo.setName(extension);
+                        // set the InputStream
+                        photo.setInput(buffered);
+                        return photo;
                     }
-                    // ----------------------------------------------------
                 }
             }
-            catch (IOException e)
+        }
+        // if there's some error opening the URL connection or getting its InputStream
+        catch (IOException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error opening URL connection or getting URL InputStream", e);
+        }
+        return null;
+    }
+
+    // detect a supported image through Tika, return its extension or null if it is not supported
+    private String detect(BufferedInputStream input) throws IOException
+    {
+        long start = System.nanoTime();
+        try
+        {
+            // detect the Mime type string and get the respective MimeType object from the
+            // Mime repository
+            MimeType mime = TIKA_CONFIG.getMimeRepository().forName(new Tika().detect(input));
+
+            // if the Type of the Mime type is an image
+            if (mime.getType().getType().equals("image"))
             {
-                LOGGER.log(Level.SEVERE, "Error opening URL connection or getting URL InputStream", e);
+                // get the Mime type Subtype
+                String subType = mime.getType().getSubtype();
+
+                // Telegram support only jpeg, png and webp for images
+                // Check if the Subtype is supported
+                if (subType.equals("jpeg") || subType.equals("png") || subType.equals("webp"))
+                    return mime.getExtension();
             }
         }
-        return photos;
+        // if MimeType was not found in the repository
+        catch (MimeTypeException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error finding MimeType from Mime repository", e);
+        }
+        finally
+        {
+            DETECT_LATENCY.recordSince(start);
+        }
+        return null;
+    }
+
+    // close a photo, releasing its buffers
+    private static void close(PhotoStream photo)
+    {
+        try
+        {
+            photo.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error in closing photo stream", e);
+        }
+    }
+
+    // collector of the photos downloaded concurrently by fetchAll()
+    private static class PhotoCollector
+    {
+        // the collected photos
+        private final List<PhotoStream> photos = new ArrayList<>();
+
+        // the photos needed
+        private final int limit;
+
+        // the downloads not finished yet
+        private int remaining;
+
+        // true if the caller is not waiting anymore
+        private boolean closed;
+
+        private PhotoCollector(int limit, int downloads)
+        {
+            this.limit = limit;
+            this.remaining = downloads;
+        }
+
+        // add a photo, false if it is not needed anymore
+        private synchronized boolean offer(PhotoStream photo)
+        {
+            if (closed || photos.size() >= limit)
+                return false;
+            photos.add(photo);
+            notifyAll();
+            return true;
+        }
+
+        // a download is finished, with or without a valid photo
+        private synchronized void done()
+        {
+            remaining--;
+            notifyAll();
+        }
+
+        // wait until all the photos are collected or all the downloads are finished
+        private synchronized List<PhotoStream> await() throws InterruptedException
+        {
+            while (photos.size() < limit && remaining > 0)
+                wait();
+            return close();
+        }
+
+        // stop collecting and return the photos collected so far
+        private synchronized List<PhotoStream> close()
+        {
+            closed = true;
+            return new ArrayList<>(photos);
+        }
     }
 
     /**
@@ -518,11 +978,26 @@ public class Hecu {
      * @author Alessandro Chiariello (Demetrio)
      */
     public Set<String> getWords() {
-        return words.keySet();
+        return words.getWords();
+    }
+
+    /**
+     * Get the HECU words bank.
+     * @return the {@link WordBank WordBank} of the HECU words
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public WordBank getBank() {
+        return words;
     }
 
-    // convert a String to textual binary representation
-    private String toBinary(String str) {
+    /**
+     * Convert a String to textual binary representation: the UTF-8 bytes of the String as
+     * 8-bit binary numbers, separated by a space.
+     * @param str the String to convert
+     * @return the binary string, empty if {@code str} is empty
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String toBinary(String str) {
         // get string bytes with UTF-8 encoding
         byte[] buf = str.getBytes(StandardCharsets.UTF_8);
 
@@ -542,54 +1017,79 @@ public class Hecu {
         return result.toString().trim();
     }
 
-    // append a comma or period to an audio stream
-    private AudioInputStream appendSymbol(AudioInputStream audio, Symbol symbol) throws IOException, UnsupportedAudioFileException {
-        AudioInputStream audioSymbol = symbol == Symbol.COMMA
-                ? AudioSystem.getAudioInputStream(new ByteArrayInputStream(this.words.get("_comma")))
-                : AudioSystem.getAudioInputStream(new ByteArrayInputStream(this.words.get("_period")));
-        return new AudioInputStream(new SequenceInputStream(audio, audioSymbol), audio.getFormat(),
-                audio.getFrameLength() + audioSymbol.getFrameLength());
-    }
+    // build the normalized form of a sentence from its tokens, without looking the words up
+    private final class KeyBuilder implements Tokenizer.Listener {
+        private final StringBuilder sb = new StringBuilder();
 
-    // get an audio byte array from a word
-    // null if there's no matching audio for the word
-    // it always tries to find the word, even if written incorrectly
-    private byte[] getWordFile(String word)
-    {
-    	byte[] file;
-    	// if the word audio is uppercase
-    	if (isUpperCase(word)) {
-    	    // try to get it
-    		file = this.words.get(word);
-    		// if it's not in the Map
-            if (file == null)
-                // try to find its lowercase counterpart
-                file = this.words.get(word.toLowerCase());
-        }
-    	// if it's lowercase or written incorrectly (e.g. HeaVy)
-    	else
-        {
-    	    // try to get the lowercase word
-            file = this.words.get(word.toLowerCase());
-            // if it's not in the Map
-            if (file == null)
-                // try to find its uppercase counterpart
-                file = this.words.get(word.toUpperCase());
+        @Override
+        public void word(CharSequence text, int start, int end) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            WordIndex.appendKey(sb, text, start, end);
+        }
+
+        @Override
+        public void symbol(int symbol) {
+            // a punctuation without clip is not said
+            if (symbols[symbol] != null) {
+                if (sb.length() > 0)
+                    sb.append(' ');
+                sb.append(symbols[symbol].getName());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
         }
-    	return file;
     }
 
-    // check if a word is uppercase
-    private boolean isUpperCase(String str) {
-        // for each character
-        for (int i = 0; i < str.length(); i++) {
-            char ch = str.charAt(i);
+    // resolve the tokens of a sentence in their clips, collecting the words not found
+    private final class Resolver implements Tokenizer.Listener {
+        private final List<Clip> clips;
+        private Map<String, List<String>> missing;
 
-            // if the char is a letter and it's not uppercase, the string is not uppercase
-            if (Character.isLetter(ch) && !Character.isUpperCase(ch))
-                return false;
+        private Resolver(int capacity) {
+            clips = new ArrayList<>(capacity);
+        }
+
+        @Override
+        public void word(CharSequence text, int start, int end) {
+            // get the audio clip from the word, without copying it
+            Clip clip = index.get(text, start, end);
+            if (clip != null) {
+                clips.add(clip);
+                return;
+            }
+            // go on to find all the missing words
+            if (missing == null)
+                missing = new LinkedHashMap<>();
+            String word = text.subSequence(start, end).toString();
+            if (!missing.containsKey(word))
+                missing.put(word, index.suggest(word));
+        }
+
+        @Override
+        public void symbol(int symbol) {
+            // a punctuation without clip is not said
+            if (symbols[symbol] != null)
+                clips.add(symbols[symbol]);
+        }
+
+        // the clips, if all the words were found
+        private List<Clip> getClips() {
+            if (missing != null)
+                throw new WordNotFoundException(missing);
+            return clips;
         }
-        // if every letter char is uppercase
-        return true;
+    }
+
+    // get an audio clip from a word
+    // null if there's no matching audio for the word
+    // it always tries to find the word, even if written incorrectly
+    // package-private for the benchmarks
+    Clip getWordFile(String word)
+    {
+        return index.get(word);
     }
 }
\ No newline at end of file
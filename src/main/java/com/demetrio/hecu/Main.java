@@ -1,5 +1,7 @@
 package com.demetrio.hecu;
 
+import java.io.IOException;
+
 import org.telegram.telegrambots.ApiContextInitializer;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
@@ -11,22 +13,29 @@ import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
  */
 public class Main {
 	/**
-	 * main method to start the bot and load {@link Hecu Hecu} class.
+	 * main method to start the bot and load {@link Hecu Hecu} class. <br/>
+	 * The bot receives the updates by long polling or, if set in the bot properties, by webhook.
 	 * @param args not used
 	 * @throws TelegramApiRequestException - if there are problems starting the bot, e.g. token invalid.
-	 * @throws ClassNotFoundException - if the {@link Hecu Hecu} class cannot be found.
+	 * @throws IOException - if the webhook server can't be started.
 	 * @author Alessandro Chiariello (Demetrio)
 	 * @see Hecu Hecu
 	 */
-    public static void main(String[] args) throws TelegramApiRequestException, ClassNotFoundException {
+    public static void main(String[] args) throws TelegramApiRequestException, IOException {
     	// initialize the API context
         ApiContextInitializer.init();
         
-        // load eagerly Hecu class
-        Class.forName(Hecu.class.getName());
+        // load eagerly Hecu instance
+        Hecu.getInstance();
         
         // starts the bot
-        TelegramBotsApi api = new TelegramBotsApi();
-        api.registerBot(new Bot());
+        Bot bot = new Bot();
+        if (bot.isWebhook())
+            bot.startWebhook();
+        else
+        {
+            TelegramBotsApi api = new TelegramBotsApi();
+            api.registerBot(bot);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.demetrio.hecu.audio;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// InputStream reading the remaining bytes of a ByteBuffer
+// The buffer should be a private view (duplicate or slice) because its position is moved while reading
+class ByteBufferInputStream extends InputStream
+{
+    // the buffer to read
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read()
+    {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+        if (len == 0)
+            return 0;
+        if (!buffer.hasRemaining())
+            return -1;
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit)
+    {
+        buffer.mark();
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        buffer.reset();
+    }
+}
@@ -0,0 +1,98 @@
+package com.demetrio.hecu.audio;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Index entry of a word inside the {@link WordBank WordBank}. <br />
+ * It doesn't hold any audio: it only tells where the decoded PCM of the word starts in the
+ * bank buffer, how many bytes it takes and which {@link AudioFormat AudioFormat} it has.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see WordBank WordBank
+ */
+public final class Clip
+{
+    // the word name
+    private final String name;
+
+    // the clip start position in the bank buffer
+    private final int offset;
+
+    // the clip length in bytes
+    private final int length;
+
+    // the clip PCM format
+    private final AudioFormat format;
+
+    /**
+     * Construct a {@link Clip Clip} with the given values.
+     * @param name the word name
+     * @param offset the clip start position in the bank buffer
+     * @param length the clip length in bytes
+     * @param format the clip PCM format
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Clip(String name, int offset, int length, AudioFormat format)
+    {
+        this.name = name;
+        this.offset = offset;
+        this.length = length;
+        this.format = format;
+    }
+
+    /**
+     * Get the word name.
+     * @return the word name
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the clip start position in the bank buffer.
+     * @return the clip offset
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the clip length in bytes.
+     * @return the clip length
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the clip PCM format.
+     * @return the clip format
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Get the clip length in frames.
+     * @return the clip frame length
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getFrameLength() {
+        return length / format.getFrameSize();
+    }
+
+    /**
+     * Get the string representation of the {@link Clip Clip} object. <br />
+     * The string format is: <i>Clip{name = {@code name},offset = {@code offset},length = {@code length}}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{name = " + name + ",offset = " + offset + ",length = " + length + "}";
+    }
+}
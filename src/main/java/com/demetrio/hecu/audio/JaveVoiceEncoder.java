@@ -0,0 +1,83 @@
+package com.demetrio.hecu.audio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import com.demetrio.hecu.metrics.LatencyHistogram;
+import com.demetrio.hecu.metrics.Metrics;
+
+import ws.schild.jave.Encoder;
+import ws.schild.jave.EncoderException;
+import ws.schild.jave.MultimediaObject;
+import ws.schild.jave.encode.AudioAttributes;
+import ws.schild.jave.encode.EncodingAttributes;
+
+/**
+ * {@link VoiceEncoder VoiceEncoder} that uses the <a href="https://github.com/a-schild/jave2">JAVE</a>
+ * ffmpeg wrapper. <br />
+ * In order to encode the wav in ogg through ffmpeg, it's necessary to create two temp files to pass to ffmpeg,
+ * so every encoding spawns an ffmpeg process and does two disk round trips.
+ * It is kept as a fallback of {@link OpusVoiceEncoder OpusVoiceEncoder}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class JaveVoiceEncoder implements VoiceEncoder
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(JaveVoiceEncoder.class.getName());
+
+    // the latency of the temporary wav file write
+    private static final LatencyHistogram WAV_WRITE_LATENCY = Metrics.getInstance().getStage("wav_write");
+
+    /**
+     * Encode an audio stream in Ogg/Opus through ffmpeg.
+     * @param audio the PCM audio stream
+     * @return the Ogg/Opus bytes
+     * @throws IOException - if there's an error with the temporary files or ffmpeg fails
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public byte[] encode(AudioInputStream audio) throws IOException
+    {
+        // save the audio in a temporary wav file
+        Path inputTemp = Files.createTempFile("hecu", ".wav");
+        // create a temporary ogg file
+        Path outputTemp = Files.createTempFile("hecu", ".ogg");
+        try
+        {
+            long start = System.nanoTime();
+            AudioSystem.write(audio, AudioFileFormat.Type.WAVE, inputTemp.toFile());
+            WAV_WRITE_LATENCY.recordSince(start);
+
+            // set the ffmpeg attributes for ogg conversion
+            AudioAttributes attr = new AudioAttributes()
+                    .setCodec("libopus");
+            EncodingAttributes encAttr = new EncodingAttributes()
+                    .setInputFormat("wav")
+                    .setOutputFormat("ogg")
+                    .setAudioAttributes(attr);
+
+            // encode the wav in ogg (from temp wav file to temp ogg file)
+            new Encoder().encode(new MultimediaObject(inputTemp.toFile()), outputTemp.toFile(), encAttr);
+            return Files.readAllBytes(outputTemp);
+        }
+        catch (EncoderException e)
+        {
+            throw new IOException("Error encoding audio with ffmpeg", e);
+        }
+        finally
+        {
+            // delete the temporary files, both of them even if the first one fails
+            boolean deleted = Files.deleteIfExists(inputTemp);
+            deleted &= Files.deleteIfExists(outputTemp);
+            if (!deleted)
+                LOGGER.warning("One of both temporary files not deleted");
+        }
+    }
+}
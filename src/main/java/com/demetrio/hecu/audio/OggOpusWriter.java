@@ -0,0 +1,194 @@
+package com.demetrio.hecu.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class that wraps Opus packets in an <a href="https://tools.ietf.org/html/rfc7845">Ogg Opus</a> stream. <br />
+ * It writes the identification and comment headers, then the audio packets in pages of at most 255
+ * lacing segments, setting the granule position, page sequence number and checksum of each page.
+ * The whole stream is written in memory.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class OggOpusWriter
+{
+    // Opus granule positions are always expressed at 48 kHz
+    public static final int GRANULE_RATE = 48000;
+
+    // Ogg page header flags
+    private static final int BEGIN_OF_STREAM = 0x02;
+    private static final int END_OF_STREAM = 0x04;
+
+    // max lacing segments in a page
+    private static final int MAX_SEGMENTS = 255;
+
+    // Ogg CRC-32 lookup table (polynomial 0x04c11db7, no reflection)
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++)
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04c11db7 : r << 1;
+            CRC_TABLE[i] = r;
+        }
+    }
+
+    // the channel count
+    private final int channels;
+
+    // the sample rate of the original audio, informative only
+    private final int inputSampleRate;
+
+    // the samples (at 48 kHz) to discard at the beginning of the decoded stream
+    private final int preSkip;
+
+    /**
+     * Construct an {@link OggOpusWriter OggOpusWriter} for streams with the given parameters.
+     * @param channels the channel count (1 or 2)
+     * @param inputSampleRate the sample rate of the original audio
+     * @param preSkip the samples, at 48 kHz, that the decoder has to discard at the beginning
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public OggOpusWriter(int channels, int inputSampleRate, int preSkip)
+    {
+        this.channels = channels;
+        this.inputSampleRate = inputSampleRate;
+        this.preSkip = preSkip;
+    }
+
+    /**
+     * Write the Ogg Opus stream containing the given packets.
+     * @param packets the Opus packets, in order
+     * @param packetDuration the duration of each packet, in samples at 48 kHz
+     * @param totalSamples the audio length in samples at 48 kHz, without the pre-skip.
+     *                     Used to trim the padding of the last packet
+     * @return the Ogg Opus stream bytes
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public byte[] write(List<byte[]> packets, int packetDuration, long totalSamples)
+    {
+        int serial = ThreadLocalRandom.current().nextInt();
+        int sequence = 0;
+        int size = 0;
+        for (byte[] packet : packets)
+            size += packet.length + packet.length / 255 + 1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 27 * (size / 4096 + 4) + 64);
+
+        // headers: each one in its own page
+        writePage(out, serial, sequence++, BEGIN_OF_STREAM, 0, packets, -1, 0, opusHead());
+        writePage(out, serial, sequence++, packets.isEmpty() ? END_OF_STREAM : 0, 0, packets, -1, 0, opusTags());
+
+        long last = preSkip + totalSamples;
+        int first = 0;
+        while (first < packets.size())
+        {
+            // fill the page with whole packets
+            int end = first;
+            int segments = 0;
+            while (end < packets.size() && segments + packets.get(end).length / 255 + 1 <= MAX_SEGMENTS)
+                segments += packets.get(end++).length / 255 + 1;
+
+            boolean eos = end == packets.size();
+            long granule = Math.min((long) end * packetDuration, last);
+            writePage(out, serial, sequence++, eos ? END_OF_STREAM : 0, granule, packets, first, end, null);
+            first = end;
+        }
+        return out.toByteArray();
+    }
+
+    // write a page with packets [first, end) or with the single header packet if first is -1
+    private void writePage(ByteArrayOutputStream out, int serial, int sequence, int flags, long granule,
+                           List<byte[]> packets, int first, int end, byte[] header)
+    {
+        int count = header != null ? 1 : end - first;
+        int segments = 0;
+        int body = 0;
+        for (int i = 0; i < count; i++) {
+            int length = header != null ? header.length : packets.get(first + i).length;
+            segments += length / 255 + 1;
+            body += length;
+        }
+
+        byte[] page = new byte[27 + segments + body];
+        page[0] = 'O';
+        page[1] = 'g';
+        page[2] = 'g';
+        page[3] = 'S';
+        page[4] = 0;
+        page[5] = (byte) flags;
+        putLong(page, 6, granule);
+        putInt(page, 14, serial);
+        putInt(page, 18, sequence);
+        page[26] = (byte) segments;
+
+        // lacing values, then packets data
+        int lacing = 27;
+        int data = 27 + segments;
+        for (int i = 0; i < count; i++) {
+            byte[] packet = header != null ? header : packets.get(first + i);
+            int length = packet.length;
+            for (; length >= 255; length -= 255)
+                page[lacing++] = (byte) 255;
+            page[lacing++] = (byte) length;
+            System.arraycopy(packet, 0, page, data, packet.length);
+            data += packet.length;
+        }
+
+        putInt(page, 22, crc(page));
+        out.write(page, 0, page.length);
+    }
+
+    // the identification header
+    private byte[] opusHead()
+    {
+        byte[] head = new byte[19];
+        System.arraycopy("OpusHead".getBytes(StandardCharsets.US_ASCII), 0, head, 0, 8);
+        head[8] = 1;
+        head[9] = (byte) channels;
+        head[10] = (byte) preSkip;
+        head[11] = (byte) (preSkip >>> 8);
+        putInt(head, 12, inputSampleRate);
+        // output gain 0 and channel mapping family 0
+        return head;
+    }
+
+    // the comment header, with vendor string and no comments
+    private byte[] opusTags()
+    {
+        byte[] vendor = "hecu".getBytes(StandardCharsets.US_ASCII);
+        byte[] tags = new byte[8 + 4 + vendor.length + 4];
+        System.arraycopy("OpusTags".getBytes(StandardCharsets.US_ASCII), 0, tags, 0, 8);
+        putInt(tags, 8, vendor.length);
+        System.arraycopy(vendor, 0, tags, 12, vendor.length);
+        return tags;
+    }
+
+    // compute the Ogg checksum of a page (with the checksum field set to 0)
+    private static int crc(byte[] page)
+    {
+        int crc = 0;
+        for (byte b : page)
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xFF];
+        return crc;
+    }
+
+    // little-endian int
+    private static void putInt(byte[] b, int off, int v)
+    {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >>> 8);
+        b[off + 2] = (byte) (v >>> 16);
+        b[off + 3] = (byte) (v >>> 24);
+    }
+
+    // little-endian long
+    private static void putLong(byte[] b, int off, long v)
+    {
+        putInt(b, off, (int) v);
+        putInt(b, off + 4, (int) (v >>> 32));
+    }
+}
@@ -0,0 +1,106 @@
+package com.demetrio.hecu.audio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Bank of the HECU words already encoded in Opus. <br />
+ * Every clip of the {@link WordBank WordBank} (symbols included) is encoded once, on construction, in its own
+ * sequence of 20 ms Opus packets. A sentence is then built by joining the packets of its words in a single
+ * Ogg stream, fixing up granule positions and page sequence numbers: no PCM is assembled and no encoder runs
+ * per request. <br />
+ * Each clip is encoded with a fresh encoder and padded with silence as long as the encoder look-ahead,
+ * so its tail is not lost; the decoder state is not continuous across words, but the joins fall on the
+ * silence around the words.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see OggOpusWriter OggOpusWriter
+ */
+public class OpusSegmentBank
+{
+    // the encoded clips, k = clip name
+    private final Map<String, Segment> segments = new HashMap<>();
+
+    // the channel count of the stitched streams
+    private final int channels;
+
+    // the encoded packets of a clip
+    private static class Segment
+    {
+        // the Opus packets
+        private final List<byte[]> packets;
+
+        // the clip length in samples at 48 kHz, without padding
+        private final long samples;
+
+        private Segment(List<byte[]> packets, long samples)
+        {
+            this.packets = packets;
+            this.samples = samples;
+        }
+    }
+
+    /**
+     * Construct an {@link OpusSegmentBank OpusSegmentBank}, encoding every clip of the word bank.
+     * @param bank the word bank
+     * @param encoder the Opus encoder
+     * @throws IOException - if a clip can't be encoded
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public OpusSegmentBank(WordBank bank, OpusVoiceEncoder encoder) throws IOException
+    {
+        int max = 1;
+        for (String word : bank.getWords())
+        {
+            Clip clip = bank.get(word);
+            AudioFormat format = OpusVoiceEncoder.opusFormat(clip.getFormat());
+            short[] samples = OpusVoiceEncoder.readSamples(bank.open(clip), format);
+
+            // pad with silence as long as the encoder look-ahead, so the clip tail gets encoded
+            int padding = (int) ((long) OpusVoiceEncoder.PRE_SKIP * (int) format.getSampleRate()
+                    / OggOpusWriter.GRANULE_RATE) * format.getChannels();
+            short[] padded = Arrays.copyOf(samples, samples.length + padding);
+
+            segments.put(word, new Segment(encoder.encodePackets(padded, 0, padded.length, format),
+                    OpusVoiceEncoder.toGranule(samples.length / format.getChannels(), format)));
+            max = Math.max(max, format.getChannels());
+        }
+        channels = max;
+    }
+
+    /**
+     * Join the packets of the clips in an Ogg/Opus stream.
+     * @param clips the clips of the sentence, in order
+     * @return the Ogg/Opus bytes, {@code null} if {@code clips} is empty
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public byte[] stitch(List<Clip> clips)
+    {
+        if (clips.isEmpty())
+            return null;
+
+        int count = 0;
+        for (Clip clip : clips)
+            count += segments.get(clip.getName()).packets.size();
+
+        // the audio ends with the last clip, the padding of the last packets is trimmed
+        List<byte[]> packets = new ArrayList<>(count);
+        long total = 0;
+        for (int i = 0; i < clips.size(); i++)
+        {
+            Segment segment = segments.get(clips.get(i).getName());
+            packets.addAll(segment.packets);
+            total += i < clips.size() - 1 ? (long) segment.packets.size() * OpusVoiceEncoder.FRAME_DURATION : segment.samples;
+        }
+
+        int rate = (int) clips.get(0).getFormat().getSampleRate();
+        return new OggOpusWriter(channels, rate, OpusVoiceEncoder.PRE_SKIP)
+                .write(packets, OpusVoiceEncoder.FRAME_DURATION, total);
+    }
+}
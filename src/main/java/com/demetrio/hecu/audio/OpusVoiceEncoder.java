@@ -0,0 +1,193 @@
+package com.demetrio.hecu.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import io.github.jaredmdobson.concentus.OpusApplication;
+import io.github.jaredmdobson.concentus.OpusEncoder;
+import io.github.jaredmdobson.concentus.OpusException;
+import io.github.jaredmdobson.concentus.OpusSignal;
+
+/**
+ * {@link VoiceEncoder VoiceEncoder} that encodes in process, with the pure Java
+ * <a href="https://github.com/jaredmdobson/concentus">Concentus</a> Opus encoder. <br />
+ * The audio is converted to 16-bit PCM at the nearest sample rate supported by Opus, encoded in
+ * 20 ms packets and wrapped in Ogg by an {@link OggOpusWriter OggOpusWriter}.
+ * Nothing is written on disk and no process is spawned.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see OggOpusWriter OggOpusWriter
+ */
+public class OpusVoiceEncoder implements VoiceEncoder
+{
+    // packet duration in milliseconds
+    public static final int FRAME_MILLIS = 20;
+
+    // packet duration in samples at 48 kHz (the Opus granule rate)
+    public static final int FRAME_DURATION = OggOpusWriter.GRANULE_RATE / 1000 * FRAME_MILLIS;
+
+    // encoder look-ahead at 48 kHz, to be discarded by the decoder
+    public static final int PRE_SKIP = 312;
+
+    // default bitrate, enough for the HECU radio voice
+    private static final int DEFAULT_BITRATE = 24000;
+
+    // max Opus packet size
+    private static final int MAX_PACKET = 1275;
+
+    // sample rates supported by Opus, ascending
+    private static final int[] SAMPLE_RATES = { 8000, 12000, 16000, 24000, 48000 };
+
+    // the encoding bitrate
+    private final int bitrate;
+
+    /**
+     * Construct an {@link OpusVoiceEncoder OpusVoiceEncoder} with the default bitrate.
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public OpusVoiceEncoder()
+    {
+        this(DEFAULT_BITRATE);
+    }
+
+    /**
+     * Construct an {@link OpusVoiceEncoder OpusVoiceEncoder} with the given bitrate.
+     * @param bitrate the bitrate in bits per second
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public OpusVoiceEncoder(int bitrate)
+    {
+        this.bitrate = bitrate;
+    }
+
+    /**
+     * Encode an audio stream in Ogg/Opus, in memory.
+     * @param audio the PCM audio stream
+     * @return the Ogg/Opus bytes
+     * @throws IOException - if there's an error reading the audio or the audio can't be encoded
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public byte[] encode(AudioInputStream audio) throws IOException
+    {
+        AudioFormat format = opusFormat(audio.getFormat());
+        short[] samples = readSamples(audio, format);
+        List<byte[]> packets = encodePackets(samples, 0, samples.length, format);
+        return new OggOpusWriter(format.getChannels(), (int) audio.getFormat().getSampleRate(), PRE_SKIP)
+                .write(packets, FRAME_DURATION, toGranule(samples.length / format.getChannels(), format));
+    }
+
+    /**
+     * Encode interleaved 16-bit samples in 20 ms Opus packets. The last packet is padded with silence.
+     * @param samples the interleaved samples
+     * @param offset the first sample to encode
+     * @param length the number of samples to encode (all channels)
+     * @param format the samples format, as returned by {@link #opusFormat(AudioFormat)}
+     * @return the Opus packets
+     * @throws IOException - if the encoder fails
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public List<byte[]> encodePackets(short[] samples, int offset, int length, AudioFormat format) throws IOException
+    {
+        int channels = format.getChannels();
+        int rate = (int) format.getSampleRate();
+        int frameSize = rate / 1000 * FRAME_MILLIS;
+        int step = frameSize * channels;
+        try
+        {
+            OpusEncoder encoder = new OpusEncoder(rate, channels, OpusApplication.OPUS_APPLICATION_VOIP);
+            encoder.setBitrate(bitrate);
+            encoder.setSignalType(OpusSignal.OPUS_SIGNAL_VOICE);
+
+            List<byte[]> packets = new ArrayList<>(length / step + 1);
+            byte[] packet = new byte[MAX_PACKET];
+            short[] last = null;
+            for (int i = 0; i < length; i += step)
+            {
+                short[] in = samples;
+                int from = offset + i;
+                // pad the last frame with silence
+                if (i + step > length)
+                {
+                    last = Arrays.copyOfRange(samples, from, from + step);
+                    Arrays.fill(last, length - i, step, (short) 0);
+                    in = last;
+                    from = 0;
+                }
+                int n = encoder.encode(in, from, frameSize, packet, 0, packet.length);
+                packets.add(Arrays.copyOf(packet, n));
+            }
+            return packets;
+        }
+        catch (OpusException e)
+        {
+            throw new IOException("Error encoding audio with Opus", e);
+        }
+    }
+
+    /**
+     * Get the 16-bit signed little-endian PCM format, at the nearest sample rate supported by Opus,
+     * that an audio format has to be converted to before encoding.
+     * @param source the audio format
+     * @return the format to encode
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static AudioFormat opusFormat(AudioFormat source)
+    {
+        // the smallest Opus rate that doesn't lose quality
+        int rate = SAMPLE_RATES[SAMPLE_RATES.length - 1];
+        for (int r : SAMPLE_RATES)
+        {
+            if (r >= source.getSampleRate())
+            {
+                rate = r;
+                break;
+            }
+        }
+        int channels = Math.min(Math.max(source.getChannels(), 1), 2);
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, 16, channels, 2 * channels, rate, false);
+    }
+
+    /**
+     * Convert a sample count (per channel) to the 48 kHz granule rate.
+     * @param samples the samples per channel
+     * @param format the samples format
+     * @return the samples at 48 kHz
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static long toGranule(long samples, AudioFormat format)
+    {
+        return samples * (OggOpusWriter.GRANULE_RATE / (int) format.getSampleRate());
+    }
+
+    /**
+     * Read an audio stream until its end, converting it to the given format.
+     * @param audio the audio stream
+     * @param format the 16-bit signed little-endian format to convert to
+     * @return the interleaved samples
+     * @throws IOException - if there's an error reading the audio
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static short[] readSamples(AudioInputStream audio, AudioFormat format) throws IOException
+    {
+        AudioInputStream input = audio.getFormat().matches(format) ? audio : AudioSystem.getAudioInputStream(format, audio);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = input.read(buf)) != -1)
+            out.write(buf, 0, n);
+
+        byte[] pcm = out.toByteArray();
+        short[] samples = new short[pcm.length / 2];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = (short) ((pcm[2 * i] & 0xFF) | (pcm[2 * i + 1] << 8));
+        return samples;
+    }
+}
@@ -0,0 +1,205 @@
+package com.demetrio.hecu.audio;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converter of PCM audio to the format of the {@link WordBank WordBank}: 16 kHz, mono, 16-bit signed little-endian. <br />
+ * 16 kHz is the wideband rate of Opus, more than enough for a voice, so every clip of the bank has the same
+ * compact format and a sentence is the concatenation of its clips, byte by byte. <br />
+ * The conversion decodes the samples (signed, unsigned or float, of any size and byte order),
+ * mixes the channels down to one and resamples with a windowed sinc filter, that also removes the frequencies
+ * above half the new rate when the rate is lowered. <br />
+ * The leading and trailing silence of a normalized clip is found by an energy threshold over 10 ms windows,
+ * so it can be trimmed once when the bank is built.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see WordBank WordBank
+ */
+public final class PcmNormalizer
+{
+    /**
+     * The format of the normalized audio: 16 kHz, mono, 16-bit signed little-endian PCM.
+     */
+    public static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+    // the zero crossings of the sinc filter on each side
+    private static final int TAPS = 8;
+
+    // the trim window, 10 ms, and the margin kept around the sound, 20 ms, in samples
+    private static final int TRIM_WINDOW = 160;
+    private static final int TRIM_MARGIN = 320;
+
+    // a window is sound if its RMS is above -30 dB from the loudest window and above -50 dBFS
+    private static final double TRIM_RELATIVE = 0.0316;
+    private static final double TRIM_ABSOLUTE = 0.00316;
+
+    private PcmNormalizer()
+    {
+    }
+
+    /**
+     * Check if an audio format is the normalized format.
+     * @param format the audio format
+     * @return {@code true} if the audio doesn't need a conversion
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static boolean isNormalized(AudioFormat format)
+    {
+        return AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding()) && format.getSampleRate() == FORMAT.getSampleRate()
+                && format.getSampleSizeInBits() == FORMAT.getSampleSizeInBits() && format.getChannels() == FORMAT.getChannels()
+                && !format.isBigEndian();
+    }
+
+    /**
+     * Convert PCM audio to the normalized format.
+     * @param pcm the PCM data, whole frames only
+     * @param format the format of the PCM data
+     * @return the normalized PCM data; {@code pcm} itself if it is already normalized
+     * @throws IOException - if the format is not PCM or its sample rate or size are not known
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static byte[] normalize(byte[] pcm, AudioFormat format) throws IOException
+    {
+        if (isNormalized(format))
+            return pcm;
+        if (format.getSampleRate() <= 0 || format.getSampleSizeInBits() <= 0 || format.getSampleSizeInBits() % 8 != 0
+                || format.getChannels() <= 0)
+            throw new IOException("Unsupported PCM format: " + format);
+
+        float[] samples = resample(mix(pcm, format), format.getSampleRate(), FORMAT.getSampleRate());
+
+        // 16-bit signed little-endian
+        byte[] out = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++)
+        {
+            int value = Math.round(Math.max(-1f, Math.min(1f, samples[i])) * Short.MAX_VALUE);
+            out[2 * i] = (byte) value;
+            out[2 * i + 1] = (byte) (value >> 8);
+        }
+        return out;
+    }
+
+    /**
+     * Trim the leading and trailing silence of normalized PCM audio, keeping a short margin around the sound. <br />
+     * Audio that is all silence (e.g. a pause clip) is not trimmed.
+     * @param pcm the normalized PCM data
+     * @return the trimmed PCM data; {@code pcm} itself if there is nothing to trim
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static byte[] trim(byte[] pcm)
+    {
+        int samples = pcm.length / 2;
+        int windows = (samples + TRIM_WINDOW - 1) / TRIM_WINDOW;
+        if (windows == 0)
+            return pcm;
+
+        // the energy of each window
+        double[] energy = new double[windows];
+        double loudest = 0;
+        for (int w = 0; w < windows; w++)
+        {
+            int end = Math.min(samples, (w + 1) * TRIM_WINDOW);
+            double sum = 0;
+            for (int i = w * TRIM_WINDOW; i < end; i++)
+            {
+                double sample = (short) (pcm[2 * i] & 0xFF | pcm[2 * i + 1] << 8) / 32768.0;
+                sum += sample * sample;
+            }
+            energy[w] = sum / (end - w * TRIM_WINDOW);
+            loudest = Math.max(loudest, energy[w]);
+        }
+
+        // the first and last windows above the threshold (thresholds squared, as the energy)
+        double threshold = Math.max(loudest * TRIM_RELATIVE * TRIM_RELATIVE, TRIM_ABSOLUTE * TRIM_ABSOLUTE);
+        int first = 0;
+        while (first < windows && energy[first] < threshold)
+            first++;
+        if (first == windows)
+            return pcm;
+        int last = windows - 1;
+        while (energy[last] < threshold)
+            last--;
+
+        int start = Math.max(0, first * TRIM_WINDOW - TRIM_MARGIN);
+        int end = Math.min(samples, (last + 1) * TRIM_WINDOW + TRIM_MARGIN);
+        if (start == 0 && end == samples)
+            return pcm;
+        return Arrays.copyOfRange(pcm, 2 * start, 2 * end);
+    }
+
+    // decode the samples in [-1, 1], averaging the channels of each frame
+    private static float[] mix(byte[] pcm, AudioFormat format) throws IOException
+    {
+        int size = format.getSampleSizeInBits() / 8;
+        int channels = format.getChannels();
+        int frameSize = format.getFrameSize() > 0 ? format.getFrameSize() : size * channels;
+        boolean isFloat = AudioFormat.Encoding.PCM_FLOAT.equals(format.getEncoding());
+        boolean isUnsigned = AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding());
+        if (!isFloat && !isUnsigned && !AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+                || isFloat && size != 4 && size != 8 || size > 8)
+            throw new IOException("Unsupported PCM format: " + format);
+
+        float[] samples = new float[pcm.length / frameSize];
+        double scale = Math.pow(2, size * 8 - 1);
+        for (int frame = 0; frame < samples.length; frame++)
+        {
+            double sum = 0;
+            for (int channel = 0; channel < channels; channel++)
+            {
+                // read the sample bytes as an unsigned number
+                int offset = frame * frameSize + channel * size;
+                long bits = 0;
+                for (int i = 0; i < size; i++)
+                {
+                    int b = pcm[offset + (format.isBigEndian() ? i : size - 1 - i)] & 0xFF;
+                    bits = bits << 8 | b;
+                }
+                if (isFloat)
+                    sum += size == 4 ? Float.intBitsToFloat((int) bits) : Double.longBitsToDouble(bits);
+                else if (isUnsigned)
+                    sum += (bits - scale) / scale;
+                // sign extension
+                else
+                    sum += (bits << (64 - size * 8) >> (64 - size * 8)) / scale;
+            }
+            samples[frame] = (float) (sum / channels);
+        }
+        return samples;
+    }
+
+    // change the sample rate with a Hann-windowed sinc filter, cut at the lower of the two Nyquist frequencies
+    private static float[] resample(float[] samples, float from, float to)
+    {
+        if (from == to)
+            return samples;
+        double step = from / to;
+        double cutoff = Math.min(1, to / from);
+        double radius = TAPS / cutoff;
+        float[] out = new float[(int) (samples.length / step)];
+        for (int n = 0; n < out.length; n++)
+        {
+            double t = n * step;
+            double sum = 0;
+            double weights = 0;
+            for (int k = Math.max(0, (int) Math.ceil(t - radius)); k <= Math.min(samples.length - 1, (int) Math.floor(t + radius)); k++)
+            {
+                double x = t - k;
+                double weight = sinc(cutoff * x) * (0.5 + 0.5 * Math.cos(Math.PI * x / radius));
+                sum += samples[k] * weight;
+                weights += weight;
+            }
+            // the weights are normalized, so the gain is one at the edges of the clip too
+            out[n] = weights != 0 ? (float) (sum / weights) : 0;
+        }
+        return out;
+    }
+
+    // normalized sinc
+    private static double sinc(double x)
+    {
+        return x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+}
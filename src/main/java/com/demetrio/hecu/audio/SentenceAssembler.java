@@ -0,0 +1,124 @@
+package com.demetrio.hecu.audio;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * Class that builds a sentence audio from a list of {@link Clip Clip}. <br />
+ * The sentence length is computed up front, so the output is allocated once and every clip is
+ * copied from the {@link WordBank WordBank} in a single pass, without chaining a stream for each word.
+ * The stack depth is constant, whatever the sentence length. <br />
+ * Optionally, consecutive clips overlap for a short crossfade, mixed while the clip is copied, with the gains
+ * computed once on construction: the joins are smoother and the sentence a bit shorter.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see WordBank WordBank
+ */
+public class SentenceAssembler
+{
+    // the bank the clips are copied from
+    private final WordBank bank;
+
+    // the fade-in gain of each crossfade frame (the fade-out gain is the mirror), empty if there's no crossfade
+    private final float[] fade;
+
+    /**
+     * Construct a {@link SentenceAssembler SentenceAssembler} reading the clips from the given bank, without crossfade.
+     * @param bank the word bank
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public SentenceAssembler(WordBank bank)
+    {
+        this(bank, 0);
+    }
+
+    /**
+     * Construct a {@link SentenceAssembler SentenceAssembler} reading the clips from the given bank,
+     * with a crossfade between consecutive clips.
+     * @param bank the word bank
+     * @param crossfadeMillis the crossfade length in milliseconds, 0 for no crossfade
+     * @throws IllegalArgumentException - if {@code crossfadeMillis} is negative
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public SentenceAssembler(WordBank bank, int crossfadeMillis)
+    {
+        if (crossfadeMillis < 0)
+            throw new IllegalArgumentException("Negative crossfade: " + crossfadeMillis + " ms");
+        this.bank = bank;
+
+        // equal-power gains, since the overlapping words are not correlated
+        fade = new float[(int) (PcmNormalizer.FORMAT.getFrameRate() * crossfadeMillis / 1000)];
+        for (int i = 0; i < fade.length; i++)
+            fade[i] = (float) Math.sin(Math.PI / 2 * (i + 0.5) / fade.length);
+    }
+
+    /**
+     * Concatenate the clips in a single {@link AudioInputStream AudioInputStream}. <br />
+     * All the clips of a bank have the same format, so they are concatenated byte by byte
+     * and the sentence has the format of its clips. With a crossfade, each join overlaps
+     * the two clips for the crossfade length, or half of the shorter clip if it's shorter.
+     * @param clips the clips of the sentence, in order
+     * @return the sentence audio stream, {@code null} if {@code clips} is empty
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public AudioInputStream assemble(List<Clip> clips)
+    {
+        if (clips.isEmpty())
+            return null;
+        AudioFormat format = clips.get(0).getFormat();
+
+        // the overlap, in frames, of each clip with the previous one; only 16-bit mono can be mixed
+        int[] overlaps = new int[clips.size()];
+        boolean mixable = fade.length > 0 && PcmNormalizer.isNormalized(format);
+
+        // compute the total length, so that the output is allocated only once
+        long total = 0;
+        for (int i = 0; i < clips.size(); i++)
+        {
+            Clip clip = clips.get(i);
+            if (mixable && i > 0)
+                overlaps[i] = (int) Math.min(fade.length, Math.min(clips.get(i - 1).getFrameLength(), clip.getFrameLength()) / 2);
+            total += clip.getLength() - overlaps[i] * format.getFrameSize();
+        }
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Sentence too long: " + total + " bytes");
+
+        // copy each clip after the previous one, mixing the overlap
+        byte[] pcm = new byte[(int) total];
+        int position = 0;
+        for (int i = 0; i < clips.size(); i++)
+        {
+            Clip clip = clips.get(i);
+            ByteBuffer data = bank.slice(clip);
+            int overlap = overlaps[i];
+            if (overlap > 0)
+            {
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                int start = position - overlap * 2;
+                for (int j = 0; j < overlap; j++)
+                {
+                    // the gains of a short overlap are sampled from the whole fade
+                    int g = (int) ((long) j * fade.length / overlap);
+                    int k = start + 2 * j;
+                    int out = (short) (pcm[k] & 0xFF | pcm[k + 1] << 8);
+                    int in = data.getShort(2 * j);
+                    int mixed = Math.round(out * fade[fade.length - 1 - g] + in * fade[g]);
+                    mixed = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mixed));
+                    pcm[k] = (byte) mixed;
+                    pcm[k + 1] = (byte) (mixed >> 8);
+                }
+                data.position(overlap * 2);
+            }
+            int length = data.remaining();
+            data.get(pcm, position, length);
+            position += length;
+        }
+
+        return new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / format.getFrameSize());
+    }
+}
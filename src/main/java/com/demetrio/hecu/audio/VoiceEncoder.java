@@ -0,0 +1,25 @@
+package com.demetrio.hecu.audio;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * Interface of an encoder that converts the PCM audio produced by {@link com.demetrio.hecu.Hecu Hecu}
+ * in an <a href="https://en.wikipedia.org/wiki/Ogg">Ogg</a>/Opus stream, the format of a Telegram voice message.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see OpusVoiceEncoder OpusVoiceEncoder
+ * @see JaveVoiceEncoder JaveVoiceEncoder
+ */
+public interface VoiceEncoder
+{
+    /**
+     * Encode an audio stream in Ogg/Opus. The stream is read until its end.
+     * @param audio the PCM audio stream
+     * @return the Ogg/Opus bytes
+     * @throws IOException - if there's an error reading or encoding the audio
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    byte[] encode(AudioInputStream audio) throws IOException;
+}
@@ -0,0 +1,252 @@
+package com.demetrio.hecu.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Bank of the HECU words audio. <br />
+ * Every word audio file is decoded only once, when the bank is built, and its PCM data, converted to a single
+ * format (16 kHz mono 16-bit), is stored in a single contiguous direct {@link ByteBuffer ByteBuffer} shared by all
+ * the words (a {@link WordPack WordPack} file mapped in memory, if the bank was packed at compile time).
+ * Each word is indexed by a {@link Clip Clip} that keeps its offset, length and format,
+ * so getting the audio of a word doesn't parse any header or look up any audio service provider. <br />
+ * A bank is created through its {@link Builder Builder} or by {@link WordPack#map(java.nio.file.Path) WordPack.map(Path)}
+ * and it is immutable after creation.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see Clip Clip
+ */
+public class WordBank
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(WordBank.class.getName());
+
+    // the PCM data of all the words (read-only)
+    private final ByteBuffer pcm;
+
+    // the word index
+    private final Map<String, Clip> index;
+
+    // constructor called by the Builder and by the WordPack
+    WordBank(ByteBuffer pcm, Map<String, Clip> index)
+    {
+        this.pcm = pcm.asReadOnlyBuffer();
+        this.index = Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Get the {@link Clip Clip} of a word.
+     * @param word the word, exactly as it is stored in the bank
+     * @return the word clip, {@code null} if the word is not in the bank
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Clip get(String word)
+    {
+        return index.get(word);
+    }
+
+    /**
+     * Get the words in the bank.
+     * @return the words {@link Set Set}
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Set<String> getWords()
+    {
+        return index.keySet();
+    }
+
+    /**
+     * Get a read-only view of the PCM data of a {@link Clip Clip}. <br />
+     * The view has its own position and limit, so it can be read without synchronization.
+     * @param clip the clip
+     * @return the clip PCM data, from position 0 to its length
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public ByteBuffer slice(Clip clip)
+    {
+        ByteBuffer view = pcm.duplicate();
+        view.limit(clip.getOffset() + clip.getLength());
+        view.position(clip.getOffset());
+        return view.slice();
+    }
+
+    /**
+     * Get an {@link AudioInputStream AudioInputStream} reading the PCM data of a {@link Clip Clip}.
+     * @param clip the clip
+     * @return the clip audio stream
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public AudioInputStream open(Clip clip)
+    {
+        return new AudioInputStream(new ByteBufferInputStream(slice(clip)), clip.getFormat(), clip.getFrameLength());
+    }
+
+    /**
+     * Builder of a {@link WordBank WordBank}. <br />
+     * Words are decoded while added and copied in the bank buffer on {@link #build()}.
+     * Every word is converted to the format of {@link PcmNormalizer PcmNormalizer} (16 kHz mono 16-bit),
+     * so all the clips of the bank can be concatenated; the converted words are logged on {@link #build()}.
+     * The leading and trailing silence of every word is trimmed, so a clip is only its sound.
+     * @author Alessandro Chiariello (Demetrio)
+     * @version 1.0
+     */
+    public static class Builder
+    {
+        // the decoded words, in insertion order
+        private final Map<String, byte[]> data = new LinkedHashMap<>();
+
+        // the words converted to the bank format, k = source format, v = words
+        private final Map<String, List<String>> converted = new TreeMap<>();
+
+        // the total PCM length
+        private int size;
+
+        // the silence bytes trimmed from the words
+        private long trimmedBytes;
+
+        /**
+         * Decode an audio file and add it to the bank.
+         * @param word the word name
+         * @param file the audio file bytes (e.g. a WAV file)
+         * @return this builder
+         * @throws IOException - if there's an error reading the audio
+         * @throws UnsupportedAudioFileException - if the audio is not supported
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public Builder add(String word, byte[] file) throws IOException, UnsupportedAudioFileException
+        {
+            try (AudioInputStream audio = AudioSystem.getAudioInputStream(new ByteArrayInputStream(file)))
+            {
+                return add(word, audio);
+            }
+        }
+
+        /**
+         * Add an already decoded audio stream to the bank. The stream is read until its end.
+         * @param word the word name
+         * @param audio the audio stream
+         * @return this builder
+         * @throws IOException - if there's an error reading the audio
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public Builder add(String word, AudioInputStream audio) throws IOException
+        {
+            AudioFormat format = audio.getFormat();
+            AudioInputStream source = audio;
+            // compressed audio (e.g. mu-law) is decoded to PCM first
+            if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+                    && !AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding())
+                    && !AudioFormat.Encoding.PCM_FLOAT.equals(format.getEncoding()))
+            {
+                try
+                {
+                    source = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, audio);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new IOException("Unsupported audio format of word " + word + ": " + format, e);
+                }
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = source.read(buf)) != -1)
+                out.write(buf, 0, n);
+
+            // keep only whole frames
+            int frameSize = source.getFormat().getFrameSize();
+            byte[] pcm = out.toByteArray();
+            int length = frameSize > 0 ? pcm.length - pcm.length % frameSize : pcm.length;
+
+            // convert to the bank format
+            if (!PcmNormalizer.isNormalized(source.getFormat()))
+            {
+                pcm = PcmNormalizer.normalize(length == pcm.length ? pcm : Arrays.copyOf(pcm, length), source.getFormat());
+                length = pcm.length;
+                converted.computeIfAbsent(format.toString(), k -> new ArrayList<>()).add(word);
+            }
+
+            if (length != pcm.length)
+                pcm = Arrays.copyOf(pcm, length);
+
+            // trim the leading and trailing silence once, so the sentences don't have gaps between the words
+            byte[] trimmed = PcmNormalizer.trim(pcm);
+            trimmedBytes += pcm.length - trimmed.length;
+
+            // if the word was already added, its old data is replaced
+            byte[] old = data.put(word, trimmed);
+            if (old != null)
+                size -= old.length;
+            size += trimmed.length;
+            return this;
+        }
+
+        /**
+         * Add a silence to the bank.
+         * @param word the silence name
+         * @param millis the silence length in milliseconds
+         * @return this builder
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public Builder addSilence(String word, int millis)
+        {
+            AudioFormat format = PcmNormalizer.FORMAT;
+            byte[] pcm = new byte[(int) (format.getFrameRate() * millis / 1000) * format.getFrameSize()];
+            try
+            {
+                return add(word, new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / format.getFrameSize()));
+            }
+            // a stream over an array is never in error
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Build the {@link WordBank WordBank}, copying all the words PCM data in a single direct buffer.
+         * @return the word bank
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public WordBank build()
+        {
+            // report the converted source files, by source format
+            for (Map.Entry<String, List<String>> e : converted.entrySet())
+                LOGGER.log(Level.INFO, "{0} words converted from {1} to {2}: {3}",
+                        new Object[]{ e.getValue().size(), e.getKey(), PcmNormalizer.FORMAT, e.getValue() });
+            if (trimmedBytes > 0)
+                LOGGER.log(Level.INFO, "{0,number,#} ms of leading and trailing silence trimmed from the words",
+                        (long) (trimmedBytes / PcmNormalizer.FORMAT.getFrameSize() * 1000 / PcmNormalizer.FORMAT.getFrameRate()));
+
+            ByteBuffer pcm = ByteBuffer.allocateDirect(size);
+            Map<String, Clip> index = new HashMap<>();
+            for (Map.Entry<String, byte[]> e : data.entrySet())
+            {
+                index.put(e.getKey(), new Clip(e.getKey(), pcm.position(), e.getValue().length, PcmNormalizer.FORMAT));
+                pcm.put(e.getValue());
+            }
+            pcm.flip();
+            return new WordBank(pcm, index);
+        }
+    }
+}
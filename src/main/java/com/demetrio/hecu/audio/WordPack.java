@@ -0,0 +1,410 @@
+package com.demetrio.hecu.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import com.demetrio.hecu.text.PunctuationTable;
+
+/**
+ * Packed {@link WordBank WordBank}: a single file with the decoded PCM data of all the words,
+ * built once at compile time and memory-mapped at startup. <br />
+ * Its layout is:
+ * <ul>
+ *     <li>a header with a magic number, the version, the number of words, the data offset and length,
+ *     a checksum of the table and data and a checksum of the table only</li>
+ *     <li>a word table with the name, the PCM format, the offset and the length of each word</li>
+ *     <li>the PCM data of the words, each aligned to 64 bytes</li>
+ * </ul>
+ * Mapping the pack costs a single <i>mmap</i> and the read of the table: the audio is read from the
+ * OS page cache on demand and never copied in the Java heap. So the mapping verifies only the table checksum;
+ * the whole pack is verified once, when it's copied out of the jar. <br />
+ * The pack is built by {@link #main(String[]) main(String[])}, run by Maven in the <i>process-classes</i> phase.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see WordBank WordBank
+ */
+public final class WordPack
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(WordPack.class.getName());
+
+    // the magic number of the pack file ('HECP')
+    private static final int MAGIC = 0x48454350;
+
+    // the pack format version (2: every word has the normalized format, 3: every word is trimmed,
+    // 4: the table has its own checksum)
+    private static final int VERSION = 4;
+
+    // the header length: magic, version, word count, alignment, data offset, data length and checksums
+    private static final int HEADER_LENGTH = 4 * 4 + 8 * 4;
+
+    // the alignment of the PCM data of each word
+    private static final int ALIGNMENT = 64;
+
+    // the PCM encodings, by their code in the pack
+    private static final List<AudioFormat.Encoding> ENCODINGS = Arrays.asList(AudioFormat.Encoding.PCM_SIGNED,
+            AudioFormat.Encoding.PCM_UNSIGNED, AudioFormat.Encoding.PCM_FLOAT);
+
+    private WordPack()
+    {
+    }
+
+    /**
+     * Build the pack of a words directory, with the silences of the punctuation table. <br />
+     * If the directory doesn't exist (e.g. the audio files were not copied yet), the pack is not built
+     * and the words will be decoded at startup.
+     * @param args the words directory and the pack file
+     * @throws IOException - if there's an error reading the words or writing the pack
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+            throw new IllegalArgumentException("Usage: WordPack <words directory> <pack file>");
+        Path dir = Paths.get(args[0]);
+        Path pack = Paths.get(args[1]);
+        if (!Files.isDirectory(dir))
+        {
+            LOGGER.log(Level.WARNING, "Words directory {0} not found, word pack not built", dir);
+            Files.deleteIfExists(pack);
+            return;
+        }
+
+        long start = System.nanoTime();
+        WordBank.Builder builder = new WordBank.Builder();
+        addWords(builder, dir);
+        PunctuationTable.load().getSilences().forEach(builder::addSilence);
+        WordBank bank = builder.build();
+        write(bank, pack);
+        LOGGER.log(Level.INFO, "Word pack {0} built in {1,number,#} ms: {2} words, {3,number,#} bytes",
+                new Object[]{ pack, (System.nanoTime() - start) / 1_000_000, bank.getWords().size(), Files.size(pack) });
+    }
+
+    /**
+     * Decode the audio files of a words directory and add them to a bank. <br />
+     * The word is the file name without extension; a name with an exclamation mark is an uppercase word,
+     * e.g. <i>heavy.wav</i> is <i>heavy</i> and <i>heavy!.wav</i> is <i>HEAVY</i>.
+     * A file that can't be decoded is logged and skipped.
+     * @param builder the bank builder
+     * @param dir the words directory
+     * @throws IOException - if the directory can't be read
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static void addWords(WordBank.Builder builder, Path dir) throws IOException
+    {
+        // This is the only case I know where there's need to close a Stream
+        // That's because it is relative to a opened system resource (the directory)
+        try (Stream<Path> paths = Files.walk(dir))
+        {
+            // Filters out the directories (in this case, only the parent directory)
+            paths.filter(Files::isRegularFile).forEach(e -> {
+                String filename = e.getFileName().toString();
+                // get the exclamation mark position in the audio filename
+                int mark = filename.indexOf('!');
+
+                // if there's an exclamation mark in the filename, the word name is converted to UPPERCASE
+                // (without the mark). In each case, the file extension is removed.
+                // e.g. ass.wav -> ass, ass!.wav -> ASS
+                int dot = filename.indexOf('.');
+                String name = mark != -1 ? filename.substring(0, mark).toUpperCase()
+                        : dot != -1 ? filename.substring(0, dot) : filename;
+                try
+                {
+                    // decode the audio file and add it to the bank: k = word, v = audio PCM
+                    builder.add(name, Files.readAllBytes(e));
+                }
+                // if a word was not read or decoded correctly
+                catch (IOException | UnsupportedAudioFileException e1)
+                {
+                    LOGGER.log(Level.SEVERE, "Error loading word audio file " + e, e1);
+                }
+            });
+        }
+    }
+
+    /**
+     * Write a bank in a pack file.
+     * @param bank the word bank
+     * @param pack the pack file, replaced if it exists
+     * @throws IOException - if there's an error writing the pack, or a word is not PCM
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static void write(WordBank bank, Path pack) throws IOException
+    {
+        // sorted words, so the same words always give the same pack
+        List<String> words = new ArrayList<>(bank.getWords());
+        words.sort(null);
+
+        // the word table, with the data offsets
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(table);
+        long dataLength = 0;
+        for (String word : words)
+        {
+            Clip clip = bank.get(word);
+            AudioFormat format = clip.getFormat();
+            int encoding = ENCODINGS.indexOf(format.getEncoding());
+            if (encoding == -1)
+                throw new IOException("Word " + word + " is not PCM: " + format);
+            byte[] name = word.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeByte(encoding);
+            out.writeFloat(format.getSampleRate());
+            out.writeInt(format.getSampleSizeInBits());
+            out.writeInt(format.getChannels());
+            out.writeInt(format.getFrameSize());
+            out.writeFloat(format.getFrameRate());
+            out.writeBoolean(format.isBigEndian());
+            out.writeLong(dataLength);
+            out.writeInt(clip.getLength());
+            dataLength = align(dataLength + clip.getLength());
+        }
+        out.flush();
+        long dataOffset = align(HEADER_LENGTH + table.size());
+        if (dataLength > Integer.MAX_VALUE)
+            throw new IOException("Word pack too large: " + dataLength + " bytes");
+
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset + dataLength);
+            map.position(HEADER_LENGTH);
+            map.put(table.toByteArray());
+            long position = dataOffset;
+            for (String word : words)
+            {
+                Clip clip = bank.get(word);
+                map.position((int) position);
+                map.put(bank.slice(clip));
+                position = align(position + clip.getLength());
+            }
+
+            // the checksum of the table and data, padding included, and the one of the table only
+            CRC32 crc = new CRC32();
+            ByteBuffer content = map.duplicate();
+            content.position(HEADER_LENGTH);
+            crc.update(content);
+            long tableCrc = checksum(map, dataOffset);
+
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, words.size());
+            map.putInt(12, ALIGNMENT);
+            map.putLong(16, dataOffset);
+            map.putLong(24, dataLength);
+            map.putLong(32, crc.getValue());
+            map.putLong(40, tableCrc);
+            map.force();
+        }
+    }
+
+    /**
+     * Map a pack file in a {@link WordBank WordBank}. The data is not copied: the bank reads the mapped file. <br />
+     * Only the checksum of the table is verified, so the audio is not read at startup:
+     * the whole pack is verified by {@link #toFile(URL, Path) toFile(URL, Path)} when copied.
+     * @param pack the pack file
+     * @return the word bank
+     * @throws IOException - if there's an error reading the pack, or the pack is not valid
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static WordBank map(Path pack) throws IOException
+    {
+        // the mapping stays valid after the channel is closed
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.READ))
+        {
+            if (channel.size() < HEADER_LENGTH)
+                throw new IOException("Word pack " + pack + " truncated");
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION)
+            throw new IOException("Word pack " + pack + " with wrong magic number or version");
+        int count = map.getInt(8);
+        long dataOffset = map.getLong(16);
+        long dataLength = map.getLong(24);
+        if (dataOffset + dataLength > map.capacity())
+            throw new IOException("Word pack " + pack + " truncated");
+
+        // the checksum of the table, as computed when written
+        if (checksum(map, dataOffset) != map.getLong(40))
+            throw new IOException("Word pack " + pack + " corrupted: wrong table checksum");
+
+        // read the word table
+        Map<String, Clip> index = new HashMap<>(count * 2);
+        ByteBuffer table = map.duplicate();
+        table.position(HEADER_LENGTH);
+        table.limit((int) dataOffset);
+        for (int i = 0; i < count; i++)
+        {
+            byte[] name = new byte[table.getShort()];
+            table.get(name);
+            AudioFormat.Encoding encoding = ENCODINGS.get(table.get());
+            float sampleRate = table.getFloat();
+            int sampleSize = table.getInt();
+            int channels = table.getInt();
+            int frameSize = table.getInt();
+            float frameRate = table.getFloat();
+            boolean bigEndian = table.get() != 0;
+            long offset = table.getLong();
+            int length = table.getInt();
+            if (offset + length > dataLength)
+                throw new IOException("Word pack " + pack + " corrupted");
+            String word = new String(name, StandardCharsets.UTF_8);
+            AudioFormat format = new AudioFormat(encoding, sampleRate, sampleSize, channels, frameSize, frameRate, bigEndian);
+            if (!PcmNormalizer.isNormalized(format))
+                throw new IOException("Word " + word + " of pack " + pack + " not normalized: " + format);
+            index.put(word, new Clip(word, (int) offset, length, format));
+        }
+
+        // the bank reads the data section
+        map.limit((int) (dataOffset + dataLength));
+        map.position((int) dataOffset);
+        return new WordBank(map.slice(), index);
+    }
+
+    /**
+     * Map a pack resource in a {@link WordBank WordBank}, through {@link #toFile(URL, Path) toFile(URL, Path)}
+     * and {@link #map(Path) map(Path)}. <br />
+     * If the copy of a resource in a jar can't be mapped (e.g. it was damaged after the copy), it is copied again.
+     * @param resource the pack resource
+     * @param cache the file where a resource in a jar is copied
+     * @return the word bank
+     * @throws IOException - if there's an error copying or reading the pack, or the pack is not valid
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static WordBank load(URL resource, Path cache) throws IOException
+    {
+        Path file = toFile(resource, cache);
+        try
+        {
+            return map(file);
+        }
+        catch (IOException e)
+        {
+            // the resource itself is not valid
+            if (!file.equals(cache))
+                throw e;
+            LOGGER.log(Level.WARNING, "Word pack copy " + cache + " not valid, copying it again", e);
+            Files.delete(cache);
+            return map(toFile(resource, cache));
+        }
+    }
+
+    /**
+     * Get a pack resource as a file that can be mapped. <br />
+     * A resource in the file system is returned as is. A resource in a jar is copied in the cache file,
+     * unless the cache already has the same header (and so the same checksums) and length.
+     * The checksum of the whole pack is verified while copying, so a damaged resource is never cached.
+     * @param resource the pack resource
+     * @param cache the file where a resource in a jar is copied
+     * @return the pack file
+     * @throws IOException - if there's an error copying the resource
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static Path toFile(URL resource, Path cache) throws IOException
+    {
+        if ("file".equals(resource.getProtocol()))
+        {
+            try
+            {
+                return Paths.get(resource.toURI());
+            }
+            catch (URISyntaxException e)
+            {
+                throw new IOException("Wrong word pack URI " + resource, e);
+            }
+        }
+
+        try (InputStream input = resource.openStream())
+        {
+            // compare the headers
+            byte[] header = new byte[HEADER_LENGTH];
+            int n = 0;
+            int read;
+            while (n < header.length && (read = input.read(header, n, header.length - n)) != -1)
+                n += read;
+            if (n < HEADER_LENGTH)
+                throw new IOException("Word pack " + resource + " truncated");
+            ByteBuffer fields = ByteBuffer.wrap(header);
+            long length = fields.getLong(16) + fields.getLong(24);
+            if (Files.isRegularFile(cache) && Files.size(cache) == length)
+            {
+                byte[] cached = new byte[HEADER_LENGTH];
+                try (InputStream in = Files.newInputStream(cache))
+                {
+                    int m = 0;
+                    while (m < cached.length && (read = in.read(cached, m, cached.length - m)) != -1)
+                        m += read;
+                }
+                if (Arrays.equals(header, cached))
+                    return cache;
+            }
+
+            // copy the resource in a temporary file that atomically replaces the cache
+            Path temp = cache.toAbsolutePath().resolveSibling(cache.getFileName() + ".tmp");
+            CRC32 crc = new CRC32();
+            try (OutputStream out = Files.newOutputStream(temp))
+            {
+                out.write(header, 0, n);
+                byte[] buf = new byte[64 * 1024];
+                while ((read = input.read(buf)) != -1)
+                {
+                    out.write(buf, 0, read);
+                    crc.update(buf, 0, read);
+                }
+            }
+            if (crc.getValue() != fields.getLong(32))
+            {
+                Files.delete(temp);
+                throw new IOException("Word pack " + resource + " corrupted: wrong checksum");
+            }
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.log(Level.INFO, "Word pack copied in {0}", cache);
+            return cache;
+        }
+    }
+
+    // the checksum of the word table, padding included
+    private static long checksum(ByteBuffer pack, long dataOffset)
+    {
+        CRC32 crc = new CRC32();
+        ByteBuffer table = pack.duplicate();
+        table.position(HEADER_LENGTH);
+        table.limit((int) dataOffset);
+        crc.update(table);
+        return crc.getValue();
+    }
+
+    // round up to the alignment
+    private static long align(long position)
+    {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Package for the audio processing of the HECU words.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.audio.WordBank WordBank} class that stores the decoded PCM data of all the words.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.audio.WordPack WordPack} class that packs the bank in a file at compile time
+ * 			and maps it at startup.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.audio.PcmNormalizer PcmNormalizer} class that converts the words to the bank format.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.audio.Clip Clip} class that indexes a word inside the bank.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.audio.SentenceAssembler SentenceAssembler} class that concatenates clips in a sentence.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.audio.VoiceEncoder VoiceEncoder} interface of the Ogg/Opus encoders of the voice replies:
+ * 			{@link com.demetrio.hecu.audio.OpusVoiceEncoder OpusVoiceEncoder} (in process) and
+ * 			{@link com.demetrio.hecu.audio.JaveVoiceEncoder JaveVoiceEncoder} (ffmpeg).
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.audio.OpusSegmentBank OpusSegmentBank} class that stores the words encoded in Opus
+ * 			and joins them in a sentence.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.audio.OggOpusWriter OggOpusWriter} class that wraps Opus packets in an Ogg stream.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.audio.WordBank WordBank
+ * @see com.demetrio.hecu.audio.WordPack WordPack
+ * @see com.demetrio.hecu.audio.PcmNormalizer PcmNormalizer
+ * @see com.demetrio.hecu.audio.Clip Clip
+ * @see com.demetrio.hecu.audio.SentenceAssembler SentenceAssembler
+ * @see com.demetrio.hecu.audio.VoiceEncoder VoiceEncoder
+ */
+package com.demetrio.hecu.audio;
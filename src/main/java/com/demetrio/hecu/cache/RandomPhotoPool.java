@@ -0,0 +1,298 @@
+package com.demetrio.hecu.cache;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.demetrio.hecu.util.PhotoStream;
+
+/**
+ * Pool of random images already downloaded and validated, for the commonly requested sizes. <br />
+ * A background refiller keeps each size at a target level, so a random <i>photo</i> request is served from
+ * memory; a request for an unusual size or an empty pool falls back to a live download. <br />
+ * The pool has a memory budget in bytes: when it is exceeded, the oldest images are evicted. <br />
+ * The refiller runs from {@link #start() start()}, so the loader is not used before its owner is fully built.
+ * It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class RandomPhotoPool
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(RandomPhotoPool.class.getName());
+
+    // period of the refill, to retry after a failed download
+    private static final long REFILL_PERIOD_SECONDS = 30;
+
+    /**
+     * Interface of the image downloader used to refill the pool.
+     * @author Alessandro Chiariello (Demetrio)
+     * @version 1.0
+     */
+    @FunctionalInterface
+    public interface Loader
+    {
+        /**
+         * Download and validate a random image.
+         * @param width the image width
+         * @param height the image height
+         * @return the image, {@code null} if the download failed
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        Photo load(int width, int height);
+    }
+
+    /**
+     * A downloaded image.
+     * @author Alessandro Chiariello (Demetrio)
+     * @version 1.0
+     */
+    public static class Photo
+    {
+        // the image bytes
+        private final byte[] data;
+
+        // the image extension (e.g. .jpg)
+        private final String extension;
+
+        /**
+         * Construct a {@link Photo Photo} with the given values.
+         * @param data the image bytes
+         * @param extension the image extension
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public Photo(byte[] data, String extension)
+        {
+            this.data = data;
+            this.extension = extension;
+        }
+
+        /**
+         * Get a {@link PhotoStream PhotoStream} reading the image, with the extension as name.
+         * @return the image stream
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public PhotoStream toStream()
+        {
+            PhotoStream photo = new PhotoStream();
+            photo.setName(extension);
+            photo.setInput(new ByteArrayInputStream(data));
+            return photo;
+        }
+    }
+
+    // the pooled images of each size, k = width x height, v = images (oldest first)
+    private final Map<String, Deque<Photo>> pools = new LinkedHashMap<>();
+
+    // the image downloader
+    private final Loader loader;
+
+    // the images to keep for each size
+    private final int target;
+
+    // the memory budget in bytes
+    private final long capacity;
+
+    // the pooled bytes
+    private long size;
+
+    // the hit and miss counters
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // the refiller
+    private final ScheduledExecutorService refiller;
+
+    // true if a refill is scheduled; no refill is scheduled until the pool is started
+    private final AtomicBoolean refilling = new AtomicBoolean(true);
+
+    /**
+     * Construct a {@link RandomPhotoPool RandomPhotoPool}. The pool is empty until {@link #start() started}.
+     * @param loader the image downloader
+     * @param sizes the pooled sizes, as <i>width</i>x<i>height</i> (e.g. 800x800); malformed sizes are logged and ignored
+     * @param target the images to keep for each size
+     * @param capacity the memory budget in bytes
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public RandomPhotoPool(Loader loader, Iterable<String> sizes, int target, long capacity)
+    {
+        this.loader = loader;
+        this.target = target;
+        this.capacity = capacity;
+        for (String s : sizes)
+        {
+            String size = s.trim().toLowerCase();
+            if (size.isEmpty())
+                continue;
+            // parse the size now, so the refiller gets only valid sizes
+            int x = size.indexOf('x');
+            try
+            {
+                int width = Integer.parseInt(size.substring(0, Math.max(x, 0)));
+                int height = Integer.parseInt(size.substring(x + 1));
+                if (x < 0 || width <= 0 || height <= 0)
+                    throw new NumberFormatException("Not a positive size");
+                pools.put(key(width, height), new ArrayDeque<>());
+            }
+            catch (NumberFormatException e)
+            {
+                LOGGER.log(Level.WARNING, "Random photo pool size \"{0}\" malformed, ignored", s);
+            }
+        }
+
+        refiller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hecu-photo-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start the refiller, that fills the pool right away and then periodically. It must be called once.
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void start()
+    {
+        refiller.scheduleWithFixedDelay(() -> {
+            refilling.set(true);
+            refill();
+        }, 0, REFILL_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Take an image of the given size from the pool. The pool is then refilled in background.
+     * @param width the image width
+     * @param height the image height
+     * @return the image, {@code null} if the size is not pooled or its pool is empty
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public PhotoStream poll(int width, int height)
+    {
+        Photo photo = null;
+        synchronized (this)
+        {
+            Deque<Photo> pool = pools.get(key(width, height));
+            if (pool == null)
+                return null;
+            if (!pool.isEmpty())
+            {
+                photo = pool.pollFirst();
+                size -= photo.data.length;
+            }
+        }
+        (photo != null ? hits : misses).incrementAndGet();
+
+        // schedule a refill, if one is not already scheduled
+        if (refilling.compareAndSet(false, true))
+            refiller.execute(this::refill);
+        return photo != null ? photo.toStream() : null;
+    }
+
+    /**
+     * Get the number of requests served by the pool.
+     * @return the hits
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of requests of a pooled size that found the pool empty.
+     * @return the misses
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the string representation of the {@link RandomPhotoPool RandomPhotoPool} object. <br />
+     * The string format is: <i>RandomPhotoPool{pools = {size = n, ...},size = s/c,hits = h,misses = m}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName()).append("{pools = {");
+        for (Map.Entry<String, Deque<Photo>> e : pools.entrySet())
+            sb.append(e.getKey()).append(" = ").append(e.getValue().size()).append(", ");
+        if (!pools.isEmpty())
+            sb.setLength(sb.length() - 2);
+        return sb.append("},size = ").append(size).append('/').append(capacity)
+                .append(",hits = ").append(hits).append(",misses = ").append(misses).append('}').toString();
+    }
+
+    // bring every pool to the target level; runs on the refiller thread
+    private void refill()
+    {
+        refilling.set(false);
+        for (String key : pools.keySet())
+        {
+            int x = key.indexOf('x');
+            int width = Integer.parseInt(key.substring(0, x));
+            int height = Integer.parseInt(key.substring(x + 1));
+            while (missing(key))
+            {
+                Photo photo;
+                try
+                {
+                    photo = loader.load(width, height);
+                }
+                catch (RuntimeException e)
+                {
+                    LOGGER.log(Level.SEVERE, "Error refilling random photo pool", e);
+                    photo = null;
+                }
+                // retry on the next period; stop also if the memory budget is full
+                if (photo == null || !add(key, photo))
+                    break;
+            }
+        }
+    }
+
+    // true if the pool of the size is below the target level
+    private synchronized boolean missing(String key)
+    {
+        return pools.get(key).size() < target;
+    }
+
+    // add an image, evicting the oldest ones if the memory budget is exceeded
+    // return false if the budget was exceeded
+    private synchronized boolean add(String key, Photo photo)
+    {
+        if (photo.data.length > capacity)
+            return false;
+        pools.get(key).addLast(photo);
+        size += photo.data.length;
+
+        // evict from the oldest images of the fullest pool
+        boolean fits = size <= capacity;
+        while (size > capacity)
+        {
+            Deque<Photo> fullest = null;
+            for (Deque<Photo> pool : pools.values())
+            {
+                if (fullest == null || pool.size() > fullest.size())
+                    fullest = pool;
+            }
+            size -= fullest.pollFirst().data.length;
+        }
+        return fits;
+    }
+
+    // the pool key of a size
+    private static String key(int width, int height)
+    {
+        return width + "x" + height;
+    }
+}
@@ -0,0 +1,251 @@
+package com.demetrio.hecu.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the <i>Google Custom Search API</i> result pages. <br />
+ * The key is a normalized query with the start offset of the page, the value is the list of the image links
+ * of the page, so a repeated query uses no API quota and its links are shared among the users. <br />
+ * The entries expire after a time to live, and the cache has a memory budget in bytes: when it is exceeded
+ * the least recently used pages are evicted. It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class SearchCache
+{
+    // estimated bytes of an entry besides its links
+    private static final int ENTRY_OVERHEAD = 64;
+
+    // estimated bytes of a link besides its characters
+    private static final int LINK_OVERHEAD = 40;
+
+    // the cached pages, in access order (least recently used first), k = query and start
+    private final LinkedHashMap<String, Page> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // the cached start offsets of each query
+    private final Map<String, Set<Integer>> starts = new HashMap<>();
+
+    // the time to live in nanoseconds
+    private final long ttl;
+
+    // the memory budget in bytes
+    private final long capacity;
+
+    // the cached bytes
+    private long size;
+
+    // random generator for the cached start offsets
+    private final Random random = new Random();
+
+    // the hit and miss counters
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // a cached result page
+    private static class Page
+    {
+        private final String query;
+        private final int start;
+        private final List<String> links;
+        private final long expires;
+        private final long bytes;
+
+        private Page(String query, int start, List<String> links, long expires)
+        {
+            this.query = query;
+            this.start = start;
+            this.links = links;
+            this.expires = expires;
+            long bytes = ENTRY_OVERHEAD + 2L * query.length();
+            for (String link : links)
+                bytes += LINK_OVERHEAD + 2L * link.length();
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Construct a {@link SearchCache SearchCache} with the given time to live and memory budget.
+     * @param ttl the time to live of a page
+     * @param unit the time unit of {@code ttl}
+     * @param capacity the memory budget in bytes; if 0, nothing is cached
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public SearchCache(long ttl, TimeUnit unit, long capacity)
+    {
+        this.ttl = unit.toNanos(ttl);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Normalize a query, so that queries differing only in case or spaces share the same pages.
+     * @param query the query
+     * @return the normalized query
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static String normalize(String query)
+    {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get a cached page, marking it as recently used.
+     * @param query the normalized query
+     * @param start the start offset of the page
+     * @return the image links of the page, {@code null} if it is not cached or expired
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public List<String> get(String query, int start)
+    {
+        List<String> links = null;
+        synchronized (this)
+        {
+            String key = key(query, start);
+            Page page = entries.get(key);
+            if (page != null)
+            {
+                if (System.nanoTime() - page.expires < 0)
+                    links = page.links;
+                else
+                    remove(key, page);
+            }
+        }
+        (links != null ? hits : misses).incrementAndGet();
+        return links;
+    }
+
+    /**
+     * Get the start offset of a cached page of the query, chosen at random among the pages not expired. <br />
+     * It is used to begin a search from a page that uses no API quota.
+     * @param query the normalized query
+     * @return the start offset, -1 if no page of the query is cached
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized int getStart(String query)
+    {
+        Set<Integer> cached = starts.get(query);
+        if (cached == null)
+            return -1;
+
+        // drop the expired pages of the query
+        long now = System.nanoTime();
+        for (Integer start : new ArrayList<>(cached))
+        {
+            String key = key(query, start);
+            Page page = entries.get(key);
+            if (now - page.expires >= 0)
+                remove(key, page);
+        }
+        if (!starts.containsKey(query))
+            return -1;
+        List<Integer> list = new ArrayList<>(starts.get(query));
+        return list.get(random.nextInt(list.size()));
+    }
+
+    /**
+     * Cache a page, evicting the least recently used ones if the memory budget is exceeded. <br />
+     * A page bigger than the whole budget is not cached.
+     * @param query the normalized query
+     * @param start the start offset of the page
+     * @param links the image links of the page
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized void put(String query, int start, List<String> links)
+    {
+        Page page = new Page(query, start, Collections.unmodifiableList(new ArrayList<>(links)), System.nanoTime() + ttl);
+        if (page.bytes > capacity)
+            return;
+
+        String key = key(query, start);
+        Page old = entries.get(key);
+        if (old != null)
+            remove(key, old);
+        entries.put(key, page);
+        starts.computeIfAbsent(query, k -> new HashSet<>()).add(start);
+        size += page.bytes;
+
+        // evict from the least recently used
+        Iterator<Map.Entry<String, Page>> it = entries.entrySet().iterator();
+        while (size > capacity && it.hasNext())
+        {
+            Page evicted = it.next().getValue();
+            it.remove();
+            unindex(evicted);
+        }
+    }
+
+    /**
+     * Get the number of cache hits, that is the API calls saved.
+     * @return the hits
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of cache misses.
+     * @return the misses
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the ratio of the page lookups served by the cache.
+     * @return the hit ratio, between 0 and 1
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : h / (double) total;
+    }
+
+    /**
+     * Get the string representation of the {@link SearchCache SearchCache} object. <br />
+     * The string format is: <i>SearchCache{entries = n,queries = q,size = s/c,hits = h,misses = m,hitRatio = r}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "{entries = " + entries.size() + ",queries = " + starts.size()
+                + ",size = " + size + "/" + capacity + ",hits = " + hits + ",misses = " + misses
+                + ",hitRatio = " + String.format("%.2f", getHitRatio()) + "}";
+    }
+
+    // remove a page from the cache
+    private void remove(String key, Page page)
+    {
+        entries.remove(key);
+        unindex(page);
+    }
+
+    // remove a page from the size and the start offsets of its query
+    private void unindex(Page page)
+    {
+        size -= page.bytes;
+        Set<Integer> cached = starts.get(page.query);
+        if (cached != null && cached.remove(page.start) && cached.isEmpty())
+            starts.remove(page.query);
+    }
+
+    // the cache key of a page
+    private static String key(String query, int start)
+    {
+        return start + ":" + query;
+    }
+}
@@ -0,0 +1,123 @@
+package com.demetrio.hecu.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the encoded voice replies. <br />
+ * The key is a normalized sentence, the value is the finished Ogg/Opus audio, so that a repeated
+ * quote skips both synthesis and encoding. <br />
+ * The cache has a memory budget in bytes: when it is exceeded the least recently used replies are evicted.
+ * It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class VoiceCache
+{
+    // the cached replies, in access order (least recently used first)
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // the memory budget in bytes
+    private final long capacity;
+
+    // the cached bytes
+    private long size;
+
+    // the hit and miss counters
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Construct a {@link VoiceCache VoiceCache} with the given memory budget.
+     * @param capacity the memory budget in bytes; if 0, nothing is cached
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public VoiceCache(long capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get a cached reply, marking it as recently used.
+     * @param sentence the normalized sentence
+     * @return the Ogg/Opus audio, {@code null} if it is not cached
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public byte[] get(String sentence)
+    {
+        byte[] audio;
+        synchronized (this)
+        {
+            audio = entries.get(sentence);
+        }
+        (audio != null ? hits : misses).incrementAndGet();
+        return audio;
+    }
+
+    /**
+     * Cache a reply, evicting the least recently used ones if the memory budget is exceeded. <br />
+     * A reply bigger than the whole budget is not cached.
+     * @param sentence the normalized sentence
+     * @param audio the Ogg/Opus audio
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized void put(String sentence, byte[] audio)
+    {
+        if (audio.length > capacity)
+            return;
+
+        byte[] old = entries.put(sentence, audio);
+        if (old != null)
+            size -= old.length;
+        size += audio.length;
+
+        // evict from the least recently used
+        Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+        while (size > capacity && it.hasNext())
+        {
+            size -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Get the number of cache hits.
+     * @return the hits
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of cache misses.
+     * @return the misses
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the cached bytes.
+     * @return the cache size in bytes
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the string representation of the {@link VoiceCache VoiceCache} object. <br />
+     * The string format is: <i>VoiceCache{entries = n,size = s/c,hits = h,misses = m}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "{entries = " + entries.size() + ",size = " + size + "/" + capacity
+                + ",hits = " + hits + ",misses = " + misses + "}";
+    }
+}
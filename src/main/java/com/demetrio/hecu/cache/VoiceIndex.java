@@ -0,0 +1,240 @@
+package com.demetrio.hecu.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent index of the voice replies already uploaded to Telegram. <br />
+ * When Telegram accepts a voice, it returns a <i>file_id</i> that can be sent again without uploading
+ * the audio. This index maps the hash of a normalized sentence to that <i>file_id</i>, so a repeated
+ * sentence needs neither encoding nor upload. <br />
+ * The index is stored in an append-only file, loaded on construction, where each record is:
+ * <ul>
+ *     <li>the 64-bit sentence hash</li>
+ *     <li>the <i>file_id</i>, as UTF-8 prefixed by its 16-bit length</li>
+ * </ul>
+ * A later record of the same hash overrides the earlier ones. A truncated last record (e.g. after a crash) is ignored. <br />
+ * When the overridden or removed records are more than the indexed sentences, the file is rewritten with only
+ * the current records, on load or after an append.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class VoiceIndex
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(VoiceIndex.class.getName());
+
+    // the min number of stale records before the file is compacted, so a small file is not rewritten often
+    private static final int MIN_STALE_RECORDS = 1024;
+
+    // the index: k = sentence hash, v = Telegram file_id
+    private final Map<Long, String> fileIds = new ConcurrentHashMap<>();
+
+    // the index file path
+    private final Path path;
+
+    // the index file writer, opened lazily
+    private DataOutputStream out;
+
+    // the number of records in the index file
+    private int records;
+
+    /**
+     * Construct a {@link VoiceIndex VoiceIndex} loading the records of the given file, if it exists.
+     * @param path the index file path
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public VoiceIndex(Path path)
+    {
+        this.path = path;
+        if (Files.exists(path))
+        {
+            // the length of the well formed records
+            long valid = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+            {
+                while (true)
+                {
+                    long hash;
+                    try
+                    {
+                        hash = in.readLong();
+                    }
+                    // end of the file
+                    catch (EOFException e)
+                    {
+                        break;
+                    }
+                    byte[] fileId = new byte[in.readUnsignedShort()];
+                    in.readFully(fileId);
+                    fileIds.put(hash, new String(fileId, StandardCharsets.UTF_8));
+                    valid += 8 + 2 + fileId.length;
+                    records++;
+                }
+            }
+            // the last record was truncated
+            catch (EOFException e)
+            {
+                LOGGER.warning("Voice index last record truncated, ignored");
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(Level.SEVERE, "Error loading voice index", e);
+            }
+
+            // cut the truncated record, so the next records are appended after a well formed one
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                if (channel.size() > valid)
+                    channel.truncate(valid);
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(Level.SEVERE, "Error truncating voice index", e);
+            }
+            LOGGER.log(Level.INFO, "Voice index loaded with {0} entries", fileIds.size());
+            compactIfStale();
+        }
+    }
+
+    /**
+     * Get the Telegram <i>file_id</i> of a sentence.
+     * @param sentence the normalized sentence
+     * @return the <i>file_id</i>, {@code null} if the sentence was never uploaded
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String get(String sentence)
+    {
+        return fileIds.get(hash(sentence));
+    }
+
+    /**
+     * Record the Telegram <i>file_id</i> of a sentence, appending it to the index file.
+     * @param sentence the normalized sentence
+     * @param fileId the <i>file_id</i> returned by Telegram
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void put(String sentence, String fileId)
+    {
+        long hash = hash(sentence);
+        if (fileId.equals(fileIds.put(hash, fileId)))
+            return;
+        write(hash, fileId);
+    }
+
+    /**
+     * Forget the <i>file_id</i> of a sentence, e.g. because Telegram does not accept it anymore. <br />
+     * The record is removed from memory: it will be overridden in the file by the next upload,
+     * or dropped when the file is compacted.
+     * @param sentence the normalized sentence
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void remove(String sentence)
+    {
+        fileIds.remove(hash(sentence));
+    }
+
+    /**
+     * Get the number of indexed sentences.
+     * @return the index size
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public int size()
+    {
+        return fileIds.size();
+    }
+
+    // append a record to the index file
+    private synchronized void write(long hash, String fileId)
+    {
+        try
+        {
+            if (out == null)
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile(), true)));
+            byte[] bytes = fileId.getBytes(StandardCharsets.UTF_8);
+            out.writeLong(hash);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            out.flush();
+            records++;
+        }
+        catch (IOException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error writing voice index", e);
+        }
+        compactIfStale();
+    }
+
+    // rewrite the index file with only the current records, if the stale ones are too many
+    private synchronized void compactIfStale()
+    {
+        int stale = records - fileIds.size();
+        if (stale < Math.max(MIN_STALE_RECORDS, fileIds.size()))
+            return;
+
+        // write the current records in a temporary file that atomically replaces the index file
+        Path temp = path.toAbsolutePath().resolveSibling(path.getFileName() + ".tmp");
+        int written = 0;
+        try
+        {
+            try (DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                for (Map.Entry<Long, String> entry : fileIds.entrySet())
+                {
+                    byte[] bytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                    tempOut.writeLong(entry.getKey());
+                    tempOut.writeShort(bytes.length);
+                    tempOut.write(bytes);
+                    written++;
+                }
+            }
+            if (out != null)
+            {
+                out.close();
+                out = null;
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.log(Level.INFO, "Voice index compacted: {0,number,#} stale records dropped", records - written);
+            records = written;
+        }
+        catch (IOException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error compacting voice index", e);
+        }
+    }
+
+    // 64-bit hash of a sentence: the first 8 bytes of its SHA-256 digest
+    private static long hash(String sentence)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sentence.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++)
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            return hash;
+        }
+        // SHA-256 is always available
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
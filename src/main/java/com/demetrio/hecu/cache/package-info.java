@@ -0,0 +1,29 @@
+/**
+ * Package for the application caches.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.cache.VoiceCache VoiceCache} class that caches the encoded voice replies.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.cache.VoiceIndex VoiceIndex} class that stores on disk the Telegram <i>file_id</i>
+ * 			of the voice replies already uploaded.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.cache.RandomPhotoPool RandomPhotoPool} class that keeps random images already
+ * 			downloaded for the common sizes.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.cache.SearchCache SearchCache} class that caches the <i>Google Custom Search API</i>
+ * 			result pages.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.cache.VoiceCache VoiceCache
+ * @see com.demetrio.hecu.cache.VoiceIndex VoiceIndex
+ * @see com.demetrio.hecu.cache.RandomPhotoPool RandomPhotoPool
+ * @see com.demetrio.hecu.cache.SearchCache SearchCache
+ */
+package com.demetrio.hecu.cache;
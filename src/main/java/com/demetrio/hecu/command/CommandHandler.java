@@ -0,0 +1,20 @@
+package com.demetrio.hecu.command;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+/**
+ * Interface of a handler of the bot messages: a command (e.g. <i>/say</i>) or the reply to a two-step request.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see CommandRouter CommandRouter
+ */
+@FunctionalInterface
+public interface CommandHandler
+{
+    /**
+     * Handle a text message.
+     * @param message the message
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    void handle(Message message);
+}
@@ -0,0 +1,90 @@
+package com.demetrio.hecu.command;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+/**
+ * Router of the bot commands to their {@link CommandHandler CommandHandler}. <br />
+ * A command is a message made only of a slash followed by the command name, e.g. <i>/say</i>. It may have
+ * the bot username as suffix, e.g. <i>/say@HecuBot</i>: in a group the suffix is required, so the bot doesn't
+ * answer to the commands of other bots. The suffix is compared ignoring the case, as Telegram usernames. <br />
+ * The command token is parsed once and the handler is found with a single lookup, whatever the number of commands.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class CommandRouter
+{
+    // the handlers, k = command name (without slash)
+    private final Map<String, CommandHandler> handlers = new HashMap<>();
+
+    // the bot username, null if not known
+    private final String botUsername;
+
+    /**
+     * Construct a {@link CommandRouter CommandRouter} for the given bot.
+     * @param botUsername the bot username, accepted as command suffix; if {@code null} or blank
+     *          (e.g. missing from the properties), every suffixed command is ignored
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public CommandRouter(String botUsername)
+    {
+        this.botUsername = botUsername == null || botUsername.trim().isEmpty() ? null : botUsername.trim();
+    }
+
+    /**
+     * Register the handler of a command.
+     * @param command the command name, without slash (e.g. say)
+     * @param handler the handler
+     * @return this router, for chaining
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public CommandRouter register(String command, CommandHandler handler)
+    {
+        handlers.put(command, handler);
+        return this;
+    }
+
+    /**
+     * Find the handler of a message.
+     * @param message the text message
+     * @return the handler, {@code null} if the message is not a registered command for this bot
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public CommandHandler route(Message message)
+    {
+        String text = message.getText();
+        if (text == null || text.length() < 2 || text.charAt(0) != '/')
+            return null;
+
+        // the command must be the whole message
+        int at = -1;
+        for (int i = 1; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c))
+                return null;
+            if (c == '@' && at == -1)
+                at = i;
+        }
+
+        String command;
+        if (at == -1)
+        {
+            // in a group, the command must be addressed to the bot
+            if (message.isGroupMessage())
+                return null;
+            command = text.substring(1);
+        }
+        else
+        {
+            // the suffix must be the bot username
+            if (botUsername == null || text.length() - at - 1 != botUsername.length()
+                    || !text.regionMatches(true, at + 1, botUsername, 0, botUsername.length()))
+                return null;
+            command = text.substring(1, at);
+        }
+        return handlers.get(command);
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Package for the routing of the bot commands.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.command.CommandHandler CommandHandler} interface of a message handler.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.command.CommandRouter CommandRouter} class that finds the handler of a command.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.command.CommandHandler CommandHandler
+ * @see com.demetrio.hecu.command.CommandRouter CommandRouter
+ */
+package com.demetrio.hecu.command;
\ No newline at end of file
@@ -0,0 +1,203 @@
+package com.demetrio.hecu.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Heartbeat of the chat actions (e.g. <i>typing</i>, <i>uploading photo</i>) shown while a reply is prepared. <br />
+ * Telegram shows an action for about 5 seconds, so a chat has at most one action at a time, sent on a background
+ * thread and refreshed only before it expires: starting the action a chat already shows costs nothing, and
+ * the bot work never waits for an action round trip. <br />
+ * The first action is sent after a short delay, so a reply sent right away doesn't need any action at all.
+ * Stopping the action of a chat waits for an action send in progress, so an action never arrives after the reply
+ * it was shown for: a chat action must be stopped right before its reply is sent. An action not stopped
+ * ends by itself after two minutes. <br />
+ * It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class ChatActionHeartbeat
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(ChatActionHeartbeat.class.getName());
+
+    // the delay of the first action
+    private static final long START_DELAY_MILLIS = 300;
+
+    // the refresh period, before the ~5 seconds an action is shown
+    private static final long REFRESH_MILLIS = 4500;
+
+    // the max duration of an action not stopped
+    private static final long MAX_MILLIS = 120000;
+
+    // the threads sending the actions
+    private static final int THREADS = 2;
+
+    // the scheduler of the actions
+    private final ScheduledExecutorService scheduler;
+
+    // the action sender: chat identifier and action
+    private final BiConsumer<Long, String> sender;
+
+    // the current action of each chat
+    private final Map<Long, Beat> beats = new ConcurrentHashMap<>();
+
+    // the sent and the coalesced actions
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    // the repeated action of a chat
+    private final class Beat implements Runnable
+    {
+        private final Long chatId;
+        private final String action;
+        private final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_MILLIS);
+        private ScheduledFuture<?> future;
+        private volatile boolean stopped;
+
+        private Beat(Long chatId, String action)
+        {
+            this.chatId = chatId;
+            this.action = action;
+        }
+
+        // schedule the sends, unless it was already stopped
+        private synchronized void schedule()
+        {
+            if (!stopped)
+                future = scheduler.scheduleAtFixedRate(this, START_DELAY_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        // send the action; the lock is held during the send, so stop() waits for it
+        @Override
+        public synchronized void run()
+        {
+            if (stopped)
+                return;
+            if (System.nanoTime() - deadline >= 0)
+            {
+                LOGGER.log(Level.WARNING, "Chat action \"{0}\" in chat {1,number,#} not stopped, ended",
+                        new Object[]{ action, chatId });
+                stop();
+                beats.remove(chatId, this);
+                return;
+            }
+            try
+            {
+                sender.accept(chatId, action);
+                sent.increment();
+            }
+            // a failed send must not cancel the next ones
+            catch (RuntimeException e)
+            {
+                LOGGER.log(Level.SEVERE, "Error sending chat action", e);
+            }
+        }
+
+        // stop the sends, waiting for the one in progress
+        private synchronized void stop()
+        {
+            stopped = true;
+            if (future != null)
+                future.cancel(false);
+        }
+    }
+
+    /**
+     * Construct a {@link ChatActionHeartbeat ChatActionHeartbeat}.
+     * @param sender the sender of an action to a chat, e.g. through a
+     *               {@link org.telegram.telegrambots.meta.api.methods.send.SendChatAction SendChatAction}
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public ChatActionHeartbeat(BiConsumer<Long, String> sender)
+    {
+        this.sender = sender;
+        AtomicInteger count = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "hecu-chat-action-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Show an action in a chat until it's stopped. If the chat already shows the action, nothing happens;
+     * if it shows another action, the new one replaces it.
+     * @param chatId the chat identifier
+     * @param action the action, as in {@link org.telegram.telegrambots.meta.api.methods.ActionType ActionType}
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void start(Long chatId, String action)
+    {
+        Beat[] replaced = new Beat[1];
+        Beat[] created = new Beat[1];
+        beats.compute(chatId, (k, current) -> {
+            if (current != null && !current.stopped && current.action.equals(action))
+                return current;
+            replaced[0] = current;
+            created[0] = new Beat(chatId, action);
+            return created[0];
+        });
+
+        // the locks are taken outside the map
+        if (created[0] == null)
+        {
+            coalesced.increment();
+            return;
+        }
+        if (replaced[0] != null)
+            replaced[0].stop();
+        created[0].schedule();
+    }
+
+    /**
+     * Stop the action of a chat, waiting for an action send in progress. It must be called right before
+     * sending the reply, so that the action doesn't arrive after it.
+     * @param chatId the chat identifier
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void stop(Long chatId)
+    {
+        Beat beat = beats.remove(chatId);
+        if (beat != null)
+            beat.stop();
+    }
+
+    /**
+     * Get the number of actions sent.
+     * @return the sent actions
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getSent() {
+        return sent.sum();
+    }
+
+    /**
+     * Get the number of actions not sent because the chat was already showing them.
+     * @return the coalesced actions
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Get the string representation of the {@link ChatActionHeartbeat ChatActionHeartbeat} object. <br />
+     * The string format is: <i>ChatActionHeartbeat{active = a,sent = s,coalesced = c}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{active = " + beats.size() + ",sent = " + sent + ",coalesced = " + coalesced + "}";
+    }
+}
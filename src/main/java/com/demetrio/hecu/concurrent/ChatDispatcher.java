@@ -0,0 +1,220 @@
+package com.demetrio.hecu.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dispatcher of the bot updates on a bounded worker pool. <br />
+ * Updates of different chats run in parallel, while updates of the same chat run one at a time,
+ * in the order they were dispatched: each chat has its own queue, and at most one task of a chat is
+ * in the pool at any moment. After each task the chat goes back at the end of the pool queue,
+ * so a busy chat doesn't starve the others. <br />
+ * The total number of pending tasks is bounded: when the bound is reached, new tasks are rejected.
+ * The queue depth and the time tasks wait before running are tracked.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class ChatDispatcher
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(ChatDispatcher.class.getName());
+
+    // wait time after which a warning is logged
+    private static final long SLOW_WAIT_MILLIS = 1000;
+
+    // the worker pool
+    private final ExecutorService pool;
+
+    // the queues of the chats with pending tasks
+    private final ConcurrentHashMap<Long, ChatQueue> chats = new ConcurrentHashMap<>();
+
+    // the max number of pending tasks
+    private final int queueDepth;
+
+    // the pending tasks
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // the rejected tasks
+    private final AtomicLong rejected = new AtomicLong();
+
+    // the wait time statistics, in nanoseconds
+    private final LongAdder waitTotal = new LongAdder();
+    private final LongAdder waitCount = new LongAdder();
+    private final AtomicLong waitMax = new AtomicLong();
+
+    // a task with its enqueue time
+    private static class Task
+    {
+        private final Runnable runnable;
+        private final long enqueued = System.nanoTime();
+
+        private Task(Runnable runnable)
+        {
+            this.runnable = runnable;
+        }
+    }
+
+    // the queue of a chat; its fields are only accessed inside chats.compute(), so they are guarded by the map
+    private final class ChatQueue implements Runnable
+    {
+        private final Long chatId;
+        private final Queue<Task> tasks = new ArrayDeque<>();
+        private Task current;
+
+        private ChatQueue(Long chatId)
+        {
+            this.chatId = chatId;
+        }
+
+        @Override
+        public void run()
+        {
+            Task task = current;
+            long wait = System.nanoTime() - task.enqueued;
+            waitTotal.add(wait);
+            waitCount.increment();
+            waitMax.accumulateAndGet(wait, Math::max);
+            if (TimeUnit.NANOSECONDS.toMillis(wait) > SLOW_WAIT_MILLIS)
+                LOGGER.log(Level.WARNING, "Update of chat {0,number,#} waited {1,number,#} ms\nDispatcher recap: {2}",
+                        new Object[]{ chatId, TimeUnit.NANOSECONDS.toMillis(wait), ChatDispatcher.this });
+            try
+            {
+                task.runnable.run();
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.log(Level.SEVERE, "Error in processing update of chat " + chatId, e);
+            }
+            finally
+            {
+                pending.decrementAndGet();
+                // take the next task of the chat, or remove the chat queue if there's none
+                boolean[] next = new boolean[1];
+                chats.compute(chatId, (k, q) -> {
+                    current = tasks.poll();
+                    next[0] = current != null;
+                    return next[0] ? q : null;
+                });
+                if (next[0])
+                    pool.execute(this);
+            }
+        }
+    }
+
+    /**
+     * Construct a {@link ChatDispatcher ChatDispatcher}.
+     * @param threads the number of worker threads
+     * @param queueDepth the max number of pending tasks, running ones included
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public ChatDispatcher(int threads, int queueDepth)
+    {
+        this.queueDepth = queueDepth;
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "hecu-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // the pool queue holds at most one task for each chat, so it is bounded by the pending tasks
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+    }
+
+    /**
+     * Dispatch a task of a chat. It will run after all the tasks of the same chat dispatched before.
+     * @param chatId the chat identifier
+     * @param runnable the task
+     * @return {@code true} if the task was accepted, {@code false} if it was rejected because the queue is full
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public boolean dispatch(Long chatId, Runnable runnable)
+    {
+        if (pending.incrementAndGet() > queueDepth)
+        {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Update of chat {0,number,#} rejected\nDispatcher recap: {1}",
+                    new Object[]{ chatId, this });
+            return false;
+        }
+
+        Task task = new Task(runnable);
+        ChatQueue[] start = new ChatQueue[1];
+        chats.compute(chatId, (k, q) -> {
+            // if the chat has no running task, this task is the current one; otherwise it waits its turn
+            if (q == null)
+            {
+                q = new ChatQueue(k);
+                q.current = task;
+                start[0] = q;
+            }
+            else
+                q.tasks.add(task);
+            return q;
+        });
+        if (start[0] != null)
+            pool.execute(start[0]);
+        return true;
+    }
+
+    /**
+     * Get the pending tasks, running ones included.
+     * @return the queue depth
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public int getQueueDepth() {
+        return pending.get();
+    }
+
+    /**
+     * Get the number of rejected tasks.
+     * @return the rejected tasks
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Get the average time tasks waited before running.
+     * @return the average wait time in milliseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public double getAverageWaitMillis() {
+        long count = waitCount.sum();
+        return count == 0 ? 0 : waitTotal.sum() / (double) count / 1_000_000;
+    }
+
+    /**
+     * Get the max time a task waited before running.
+     * @return the max wait time in milliseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitMax.get());
+    }
+
+    /**
+     * Get the string representation of the {@link ChatDispatcher ChatDispatcher} object. <br />
+     * The string format is: <i>ChatDispatcher{pending = p/d,chats = c,rejected = r,avgWait = a ms,maxWait = m ms}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{pending = " + pending + "/" + queueDepth + ",chats = " + chats.size()
+                + ",rejected = " + rejected + ",avgWait = " + String.format("%.1f", getAverageWaitMillis())
+                + " ms,maxWait = " + getMaxWaitMillis() + " ms}";
+    }
+}
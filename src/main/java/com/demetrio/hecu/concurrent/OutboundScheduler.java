@@ -0,0 +1,262 @@
+package com.demetrio.hecu.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scheduler of the messages sent to Telegram, keeping them within the Telegram rate limits. <br />
+ * A message takes a token from a global bucket (about 30 messages per second for a bot) and one from the bucket
+ * of its chat (about one message per second in a private chat, 20 per minute in a group); a sender without tokens
+ * waits until they are refilled, sleeping exactly until then, so a burst is spread at the limit rate instead
+ * of failing. <br />
+ * When Telegram answers anyway with a <i>retry_after</i>, the whole chat is paused for that time, so the other
+ * messages of the chat wait instead of failing one by one. <br />
+ * The replies have priority over the cosmetic chat actions: an action is sent only if no reply is waiting and both
+ * the global bucket and the chat bucket have tokens to spare, otherwise it is dropped; so the reply that follows
+ * the actions of a chat finds its tokens ready. <br />
+ * It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class OutboundScheduler
+{
+    // the burst of a private chat
+    private static final double CHAT_BURST = 3;
+
+    // the burst of a group
+    private static final double GROUP_BURST = 5;
+
+    // the share of the global and chat bursts kept for the replies
+    private static final double ACTION_RESERVE = 0.5;
+
+    // the max chats with a bucket; the least recently used buckets are forgotten
+    private static final int MAX_CHATS = 10000;
+
+    // the lock of the buckets, signalled when a chat pause changes
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // the global bucket
+    private final TokenBucket global;
+
+    // the chat buckets, in access order
+    private final Map<Long, TokenBucket> chats = new LinkedHashMap<Long, TokenBucket>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TokenBucket> eldest)
+        {
+            return size() > MAX_CHATS;
+        }
+    };
+
+    // the rates of the chats, in tokens per nanosecond
+    private final double chatRate;
+    private final double groupRate;
+
+    // the replies waiting for tokens
+    private int waiting;
+
+    // the statistics
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder paused = new LongAdder();
+
+    // a token bucket
+    private static final class TokenBucket
+    {
+        private final double capacity;
+        private final double rate;
+        private double tokens;
+        private long last;
+        private long pausedUntil;
+
+        private TokenBucket(double capacity, double rate, long now)
+        {
+            this.capacity = capacity;
+            this.rate = rate;
+            this.tokens = capacity;
+            this.last = now;
+            this.pausedUntil = now;
+        }
+
+        // the tokens now
+        private double available(long now)
+        {
+            tokens = Math.min(capacity, tokens + (now - last) * rate);
+            last = now;
+            return now - pausedUntil < 0 ? 0 : tokens;
+        }
+
+        // the nanoseconds until a token is available, 0 if it is available now
+        private long waitNanos(long now)
+        {
+            double available = available(now);
+            if (now - pausedUntil < 0)
+                return pausedUntil - now;
+            return available >= 1 ? 0 : (long) Math.ceil((1 - available) / rate);
+        }
+
+        private void take()
+        {
+            tokens -= 1;
+        }
+
+        private void pause(long until)
+        {
+            if (until - pausedUntil > 0)
+                pausedUntil = until;
+        }
+    }
+
+    /**
+     * Construct an {@link OutboundScheduler OutboundScheduler}.
+     * @param globalPerSecond the max messages per second of the bot
+     * @param chatPerSecond the max messages per second in a private chat
+     * @param groupPerMinute the max messages per minute in a group
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public OutboundScheduler(double globalPerSecond, double chatPerSecond, double groupPerMinute)
+    {
+        long now = System.nanoTime();
+        global = new TokenBucket(Math.max(1, globalPerSecond), globalPerSecond / 1e9, now);
+        chatRate = chatPerSecond / 1e9;
+        groupRate = groupPerMinute / 60e9;
+    }
+
+    /**
+     * Wait until a message can be sent to a chat, taking its tokens.
+     * @param chatId the chat identifier; the group identifiers are negative
+     * @throws InterruptedException - if the thread is interrupted while waiting
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void acquire(Long chatId) throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            waiting++;
+            try
+            {
+                boolean waited = false;
+                while (true)
+                {
+                    long now = System.nanoTime();
+                    TokenBucket chat = bucket(chatId, now);
+                    long wait = Math.max(global.waitNanos(now), chat.waitNanos(now));
+                    if (wait == 0)
+                    {
+                        global.take();
+                        chat.take();
+                        if (waited)
+                            delayed.increment();
+                        return;
+                    }
+                    waited = true;
+                    changed.awaitNanos(wait);
+                }
+            }
+            finally
+            {
+                waiting--;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the tokens of a chat action, if it can be sent now without delaying any reply.
+     * @param chatId the chat identifier
+     * @return {@code true} if the action can be sent, {@code false} if it must be dropped
+     * @author Alessandro Chiariello (Demetrio)
+     * @see ChatActionHeartbeat ChatActionHeartbeat
+     */
+    public boolean tryAcquireAction(Long chatId)
+    {
+        lock.lock();
+        try
+        {
+            long now = System.nanoTime();
+            TokenBucket chat = bucket(chatId, now);
+            // the chat bucket keeps a reserve too, otherwise the actions use the chat rate and the reply waits
+            if (waiting == 0 && global.available(now) >= 1 + global.capacity * ACTION_RESERVE
+                    && chat.waitNanos(now) == 0 && chat.available(now) >= 1 + chat.capacity * ACTION_RESERVE)
+            {
+                global.take();
+                chat.take();
+                return true;
+            }
+            dropped.increment();
+            return false;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pause a chat, because Telegram asked to retry after some time.
+     * @param chatId the chat identifier
+     * @param time the pause
+     * @param unit the time unit of {@code time}
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void pause(Long chatId, long time, TimeUnit unit)
+    {
+        lock.lock();
+        try
+        {
+            long now = System.nanoTime();
+            bucket(chatId, now).pause(now + unit.toNanos(time));
+            paused.increment();
+            // the waiters of the chat must wait longer
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the string representation of the {@link OutboundScheduler OutboundScheduler} object. <br />
+     * The string format is: <i>OutboundScheduler{waiting = w,delayed = d,dropped = a,paused = p}</i>,
+     * where <i>delayed</i> are the messages that waited for tokens, <i>dropped</i> the chat actions not sent and
+     * <i>paused</i> the pauses asked by Telegram
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public String toString() {
+        lock.lock();
+        try
+        {
+            return getClass().getSimpleName() + "{waiting = " + waiting + ",delayed = " + delayed + ",dropped = " + dropped
+                    + ",paused = " + paused + "}";
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    // the bucket of a chat, created if missing; called with the lock held
+    private TokenBucket bucket(Long chatId, long now)
+    {
+        TokenBucket bucket = chats.get(chatId);
+        if (bucket == null)
+        {
+            bucket = chatId < 0 ? new TokenBucket(GROUP_BURST, groupRate, now) : new TokenBucket(CHAT_BURST, chatRate, now);
+            chats.put(chatId, bucket);
+        }
+        return bucket;
+    }
+}
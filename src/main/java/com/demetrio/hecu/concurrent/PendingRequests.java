@@ -0,0 +1,205 @@
+package com.demetrio.hecu.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.demetrio.hecu.util.Request;
+import com.demetrio.hecu.util.Request.Type;
+
+/**
+ * Index of the pending two-step requests, keyed by chat and user. <br />
+ * A user has at most one pending request in a chat: adding, looking up and consuming it are single map
+ * operations, and consuming is atomic, so a request is never consumed twice. <br />
+ * A request expires after a time to live, so a user who never completes a request doesn't leave state behind:
+ * an expired request can't be consumed, and a background sweeper removes the expired ones periodically.
+ * It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class PendingRequests
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(PendingRequests.class.getName());
+
+    // max period of the sweep, in milliseconds
+    private static final long MAX_SWEEP_MILLIS = 60000;
+
+    // the pending requests
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    // the time to live in nanoseconds
+    private final long ttl;
+
+    // the expired requests
+    private final AtomicLong expired = new AtomicLong();
+
+    // the key of a request: the chat and the user
+    private static final class Key
+    {
+        private final long chatId;
+        private final int userId;
+
+        private Key(long chatId, int userId)
+        {
+            this.chatId = chatId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return chatId == key.chatId && userId == key.userId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * Long.hashCode(chatId) + userId;
+        }
+    }
+
+    // a request with its expiry time
+    private static final class Entry
+    {
+        private final Request request;
+        private final long expires;
+
+        private Entry(Request request, long expires)
+        {
+            this.request = request;
+            this.expires = expires;
+        }
+
+        private boolean isExpired(long now)
+        {
+            return now - expires >= 0;
+        }
+    }
+
+    /**
+     * Construct a {@link PendingRequests PendingRequests} and start its sweeper.
+     * @param ttl the time to live of a request
+     * @param unit the time unit of {@code ttl}
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public PendingRequests(long ttl, TimeUnit unit)
+    {
+        this.ttl = unit.toNanos(ttl);
+
+        // sweep often enough that an expired request lives at most twice its time to live
+        long period = Math.max(1, Math.min(unit.toMillis(ttl), MAX_SWEEP_MILLIS));
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hecu-request-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add the pending request of a user, replacing the one the user may already have in the chat.
+     * @param chatId the chat identifier
+     * @param userId the user identifier
+     * @param type the request type
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void add(Long chatId, Integer userId, Type type)
+    {
+        entries.put(new Key(chatId, userId), new Entry(new Request(userId, type), System.nanoTime() + ttl));
+    }
+
+    /**
+     * Remove the pending request of a user and return its type.
+     * @param chatId the chat identifier
+     * @param userId the user identifier
+     * @return the request type, {@code null} if the user has no pending request in the chat or it's expired
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Type consume(Long chatId, Integer userId)
+    {
+        Entry entry = entries.remove(new Key(chatId, userId));
+        if (entry == null)
+            return null;
+        if (entry.isExpired(System.nanoTime()))
+        {
+            expired.incrementAndGet();
+            return null;
+        }
+        return entry.request.getType();
+    }
+
+    /**
+     * Remove all the pending requests of a chat, e.g. because the bot was stopped in it.
+     * @param chatId the chat identifier
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void removeChat(Long chatId)
+    {
+        entries.keySet().removeIf(k -> k.chatId == chatId);
+    }
+
+    /**
+     * Get the number of pending requests, the expired ones not yet swept included.
+     * @return the pending requests
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of requests expired before being consumed.
+     * @return the expired requests
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * Get the string representation of the {@link PendingRequests PendingRequests} object. <br />
+     * The string format is: <i>PendingRequests{pending = p,expired = e}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{pending = " + entries.size() + ",expired = " + expired + "}";
+    }
+
+    // remove the expired requests; runs on the sweeper thread
+    private void sweep()
+    {
+        try
+        {
+            long now = System.nanoTime();
+            int[] swept = new int[1];
+            entries.values().removeIf(e -> {
+                if (!e.isExpired(now))
+                    return false;
+                swept[0]++;
+                return true;
+            });
+            expired.addAndGet(swept[0]);
+            if (swept[0] > 0)
+                LOGGER.log(Level.FINE, "{0} expired requests swept", swept[0]);
+        }
+        // a failed sweep must not cancel the next ones
+        catch (RuntimeException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error sweeping expired requests", e);
+        }
+    }
+}
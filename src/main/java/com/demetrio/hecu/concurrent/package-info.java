@@ -0,0 +1,25 @@
+/**
+ * Package for the concurrent processing of the bot work.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.concurrent.ChatDispatcher ChatDispatcher} class that processes the updates on a
+ * 			worker pool, keeping the order of each chat.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.concurrent.PendingRequests PendingRequests} class that indexes the pending two-step
+ * 			requests by chat and user, expiring them.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.concurrent.ChatActionHeartbeat ChatActionHeartbeat} class that shows a chat action
+ * 			while a reply is prepared, refreshing it only before it expires.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.concurrent.ChatDispatcher ChatDispatcher
+ * @see com.demetrio.hecu.concurrent.PendingRequests PendingRequests
+ * @see com.demetrio.hecu.concurrent.ChatActionHeartbeat ChatActionHeartbeat
+ */
+package com.demetrio.hecu.concurrent;
@@ -1,7 +1,15 @@
 package com.demetrio.hecu.exception;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Exception thrown when a word sent to the bot is not found. <br />
+ * It can carry every word of a sentence that was not found, each with the closest known words,
+ * so the user can fix the whole sentence at once. <br />
  * It is a {@link RuntimeException RuntimeException}.
  * @author Alessandro Chiariello (Demetrio)
  * @version 1.0
@@ -14,6 +22,9 @@ public class WordNotFoundException extends RuntimeException
 	 */
 	private static final long serialVersionUID = 1L;
 
+	// the words not found, in order, with their suggestions
+	private final Map<String, List<String>> missing;
+
 	/**
 	 * It construct a new {@link WordNotFoundException WordNotFoundException}
 	 * with the following detail message: <i>Word not found</i>. <br />
@@ -25,6 +36,7 @@ public class WordNotFoundException extends RuntimeException
 	public WordNotFoundException()
     {
         super("Word not found");
+        missing = Collections.emptyMap();
     }
 	
 	/**
@@ -37,5 +49,67 @@ public class WordNotFoundException extends RuntimeException
     public WordNotFoundException(String msg)
     {
         super(msg);
+        missing = Collections.emptyMap();
+    }
+
+	/**
+	 * It construct a new {@link WordNotFoundException WordNotFoundException}
+	 * for the words not found in a sentence. <br />
+	 * The detail message has a line for each word, e.g. <i>Word "sectr" not found, did you mean "sector"?</i>
+	 * @param missing the words not found, in order, each with the closest known words (may be empty)
+	 * @author Alessandro Chiariello (Demetrio)
+	 */
+    public WordNotFoundException(Map<String, List<String>> missing)
+    {
+        super(message(missing));
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : missing.entrySet())
+            copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        this.missing = Collections.unmodifiableMap(copy);
+    }
+
+	/**
+	 * Get the words not found.
+	 * @return the words, in order; empty if the exception was constructed with a detail message only
+	 * @author Alessandro Chiariello (Demetrio)
+	 */
+    public List<String> getWords()
+    {
+        return new ArrayList<>(missing.keySet());
+    }
+
+	/**
+	 * Get the closest known words of a word not found.
+	 * @param word the word not found
+	 * @return the closest words, the closest first; empty if there are none or the word is unknown
+	 * @author Alessandro Chiariello (Demetrio)
+	 */
+    public List<String> getSuggestions(String word)
+    {
+        return missing.getOrDefault(word, Collections.emptyList());
+    }
+
+    // a line for each word, with its suggestions if any
+    private static String message(Map<String, List<String>> missing)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : missing.entrySet())
+        {
+            if (sb.length() > 0)
+                sb.append('\n');
+            sb.append("Word \"").append(entry.getKey()).append("\" not found");
+            List<String> suggestions = entry.getValue();
+            for (int i = 0; i < suggestions.size(); i++)
+            {
+                if (i == 0)
+                    sb.append(", did you mean ");
+                else
+                    sb.append(i == suggestions.size() - 1 ? " or " : ", ");
+                sb.append('"').append(suggestions.get(i)).append('"');
+            }
+            if (!suggestions.isEmpty())
+                sb.append('?');
+        }
+        return sb.toString();
     }
 }
\ No newline at end of file
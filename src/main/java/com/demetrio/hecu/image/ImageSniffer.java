@@ -0,0 +1,338 @@
+package com.demetrio.hecu.image;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Fast detector of the images supported by Telegram (JPEG, PNG and WebP). <br />
+ * It checks the HTTP headers before any body is read, then the magic bytes at the start of the body,
+ * reading the image dimensions from the format header when they are there. <br />
+ * Formats recognized as unsupported (GIF, BMP, SVG, HTML pages) are rejected without any other check;
+ * an unknown format is left to a slower detector.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public final class ImageSniffer
+{
+    /**
+     * The bytes read from the start of the body to detect the format and the dimensions.
+     */
+    public static final int HEADER_LENGTH = 8192;
+
+    // Telegram limit on the sum of width and height of a photo
+    private static final int MAX_DIMENSION_SUM = 10000;
+
+    // Telegram limit on the ratio between width and height of a photo
+    private static final int MAX_RATIO = 20;
+
+    /**
+     * Enum representing an image format supported by Telegram:
+     * <ul>
+     *     <li>JPEG</li>
+     *     <li>PNG</li>
+     *     <li>WebP</li>
+     * </ul>
+     * @author Alessandro Chiariello (Demetrio)
+     * @version 1.0
+     */
+    public enum Format {
+        JPEG(".jpg"),
+        PNG(".png"),
+        WEBP(".webp");
+
+        // the file extension
+        private final String extension;
+
+        Format(String extension)
+        {
+            this.extension = extension;
+        }
+
+        /**
+         * Get the file extension of the format.
+         * @return the extension, dot included (e.g. .jpg)
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * The result of a detection: the format and, if found in the header, the dimensions.
+     * @author Alessandro Chiariello (Demetrio)
+     * @version 1.0
+     */
+    public static final class Image
+    {
+        // the image format
+        private final Format format;
+
+        // the image dimensions, -1 if not found
+        private final int width;
+        private final int height;
+
+        private Image(Format format, int width, int height)
+        {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Get the image format.
+         * @return the format
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public Format getFormat() {
+            return format;
+        }
+
+        /**
+         * Get the image width.
+         * @return the width, -1 if it was not found in the header
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Get the image height.
+         * @return the height, -1 if it was not found in the header
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Check if Telegram accepts the image as a photo: width and height must not exceed 10000 in total
+         * and their ratio must be at most 20. An image whose dimensions are not known is accepted.
+         * @return {@code true} if the image can be sent as a photo
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        public boolean isUsable() {
+            if (width == -1 || height == -1)
+                return true;
+            return width > 0 && height > 0 && width + height <= MAX_DIMENSION_SUM
+                    && Math.max(width, height) <= (long) MAX_RATIO * Math.min(width, height);
+        }
+
+        /**
+         * Get the string representation of the {@link Image Image} object. <br />
+         * The string format is: <i>Image{format = f,width = w,height = h}</i>
+         * @return the string representation of the object
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{format = " + format + ",width = " + width + ",height = " + height + "}";
+        }
+    }
+
+    private ImageSniffer()
+    {
+    }
+
+    /**
+     * Check the HTTP headers of an image response, before reading its body. <br />
+     * A missing or generic content type (e.g. <i>application/octet-stream</i>) is accepted, since the body will tell.
+     * @param contentType the <i>Content-Type</i> header, may be {@code null}
+     * @param contentLength the <i>Content-Length</i> header, -1 if unknown
+     * @param maxLength the max accepted length in bytes
+     * @return {@code false} if the response is surely not a supported image or it's too large
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static boolean acceptHeaders(String contentType, long contentLength, long maxLength)
+    {
+        if (contentLength == 0 || contentLength > maxLength)
+            return false;
+        if (contentType == null)
+            return true;
+
+        // drop the parameters, e.g. image/jpeg; charset=binary
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int semicolon = type.indexOf(';');
+        if (semicolon != -1)
+            type = type.substring(0, semicolon);
+        type = type.trim();
+
+        switch (type)
+        {
+            case "":
+            case "application/octet-stream":
+            case "binary/octet-stream":
+            case "image/jpeg":
+            case "image/jpg":
+            case "image/pjpeg":
+            case "image/png":
+            case "image/webp":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Detect a supported image from the first bytes of its body.
+     * @param header the first bytes of the body
+     * @param length the number of valid bytes in {@code header}
+     * @return the detected image, {@code null} if the format is not JPEG, PNG nor WebP
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static Image sniff(byte[] header, int length)
+    {
+        // JPEG: FF D8 FF
+        if (length >= 3 && u8(header, 0) == 0xFF && u8(header, 1) == 0xD8 && u8(header, 2) == 0xFF)
+            return sniffJpeg(header, length);
+
+        // PNG: 89 'PNG' CR LF SUB LF, then the IHDR chunk with width and height
+        if (startsWith(header, length, 0, new byte[]{ (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' }))
+        {
+            if (length >= 24 && startsWith(header, length, 12, ascii("IHDR")))
+                return new Image(Format.PNG, be32(header, 16), be32(header, 20));
+            return new Image(Format.PNG, -1, -1);
+        }
+
+        // WebP: 'RIFF' size 'WEBP', then the first chunk
+        if (startsWith(header, length, 0, ascii("RIFF")) && startsWith(header, length, 8, ascii("WEBP")))
+            return sniffWebp(header, length);
+
+        return null;
+    }
+
+    /**
+     * Check if the first bytes of a body are of a format surely not supported by Telegram as a photo
+     * (GIF, BMP, SVG or an HTML page).
+     * @param header the first bytes of the body
+     * @param length the number of valid bytes in {@code header}
+     * @return {@code true} if the body is surely not a supported image
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static boolean isUnsupported(byte[] header, int length)
+    {
+        if (startsWith(header, length, 0, ascii("GIF8")) || startsWith(header, length, 0, ascii("BM")))
+            return true;
+
+        // markup: skip the blanks and check the first tag
+        int i = 0;
+        // UTF-8 byte order mark
+        if (startsWith(header, length, 0, new byte[]{ (byte) 0xEF, (byte) 0xBB, (byte) 0xBF }))
+            i = 3;
+        while (i < length && Character.isWhitespace(header[i]))
+            i++;
+        if (i >= length || header[i] != '<')
+            return false;
+        String tag = new String(header, i, Math.min(length - i, 16), StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT);
+        return tag.startsWith("<?xml") || tag.startsWith("<svg") || tag.startsWith("<!doctype") || tag.startsWith("<html");
+    }
+
+    // find the dimensions in the JPEG start of frame segment
+    private static Image sniffJpeg(byte[] header, int length)
+    {
+        int i = 2;
+        while (i + 4 <= length)
+        {
+            if (u8(header, i) != 0xFF)
+                break;
+            int marker = u8(header, i + 1);
+            // fill byte
+            if (marker == 0xFF)
+            {
+                i++;
+                continue;
+            }
+            // markers without length
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7))
+            {
+                i += 2;
+                continue;
+            }
+            int segment = be16(header, i + 2);
+            // start of frame (SOF0-SOF15, except DHT, JPG and DAC): precision, height, width
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC)
+            {
+                if (i + 9 > length)
+                    break;
+                return new Image(Format.JPEG, be16(header, i + 7), be16(header, i + 5));
+            }
+            // start of scan: no frame header before the image data
+            if (marker == 0xDA || segment < 2)
+                break;
+            i += 2 + segment;
+        }
+        return new Image(Format.JPEG, -1, -1);
+    }
+
+    // find the dimensions in the first WebP chunk
+    private static Image sniffWebp(byte[] header, int length)
+    {
+        // lossy: frame tag, then the start code 9D 01 2A and the 14-bit dimensions
+        if (startsWith(header, length, 12, ascii("VP8 ")) && length >= 30
+                && u8(header, 23) == 0x9D && u8(header, 24) == 0x01 && u8(header, 25) == 0x2A)
+            return new Image(Format.WEBP, le16(header, 26) & 0x3FFF, le16(header, 28) & 0x3FFF);
+
+        // lossless: signature 2F, then the 14-bit dimensions minus one
+        if (startsWith(header, length, 12, ascii("VP8L")) && length >= 25 && u8(header, 20) == 0x2F)
+        {
+            int bits = u8(header, 21) | u8(header, 22) << 8 | u8(header, 23) << 16 | u8(header, 24) << 24;
+            return new Image(Format.WEBP, (bits & 0x3FFF) + 1, ((bits >>> 14) & 0x3FFF) + 1);
+        }
+
+        // extended: the 24-bit canvas dimensions minus one
+        if (startsWith(header, length, 12, ascii("VP8X")) && length >= 30)
+            return new Image(Format.WEBP, le24(header, 24) + 1, le24(header, 27) + 1);
+
+        return new Image(Format.WEBP, -1, -1);
+    }
+
+    // check if the bytes at offset match the prefix
+    private static boolean startsWith(byte[] header, int length, int offset, byte[] prefix)
+    {
+        if (offset + prefix.length > length)
+            return false;
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (header[offset + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    // the ASCII bytes of a string
+    private static byte[] ascii(String s)
+    {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // unsigned byte
+    private static int u8(byte[] b, int i)
+    {
+        return b[i] & 0xFF;
+    }
+
+    // big-endian unsigned 16-bit
+    private static int be16(byte[] b, int i)
+    {
+        return u8(b, i) << 8 | u8(b, i + 1);
+    }
+
+    // big-endian 32-bit
+    private static int be32(byte[] b, int i)
+    {
+        return be16(b, i) << 16 | be16(b, i + 2);
+    }
+
+    // little-endian unsigned 16-bit
+    private static int le16(byte[] b, int i)
+    {
+        return u8(b, i) | u8(b, i + 1) << 8;
+    }
+
+    // little-endian unsigned 24-bit
+    private static int le24(byte[] b, int i)
+    {
+        return le16(b, i) | u8(b, i + 2) << 16;
+    }
+}
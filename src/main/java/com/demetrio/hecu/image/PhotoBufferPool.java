@@ -0,0 +1,244 @@
+package com.demetrio.hecu.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of reusable memory buffers for the downloaded images. <br />
+ * An image is read fully in memory, in fixed size chunks taken from the pool, so its connection can be
+ * released right away; the chunks go back to the pool when the image stream is closed. <br />
+ * The pool has a max size for a single image and a total memory budget: an image exceeding either of them
+ * is discarded. It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class PhotoBufferPool
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(PhotoBufferPool.class.getName());
+
+    // the chunk size in bytes
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // the free chunks
+    private final Deque<byte[]> free = new ArrayDeque<>();
+
+    // the max size of an image in bytes
+    private final long maxImageBytes;
+
+    // the max chunks of the pool
+    private final long maxTotalChunks;
+
+    // the chunks allocated so far
+    private long allocated;
+
+    // the chunks in use
+    private long used;
+
+    // the images discarded because too large or out of budget
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Construct a {@link PhotoBufferPool PhotoBufferPool}.
+     * @param maxImageBytes the max size of an image in bytes
+     * @param capacity the memory budget in bytes
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public PhotoBufferPool(long maxImageBytes, long capacity)
+    {
+        this.maxImageBytes = maxImageBytes;
+        this.maxTotalChunks = capacity / CHUNK_SIZE;
+    }
+
+    /**
+     * Read an input fully in buffers of the pool. The input is not closed.
+     * @param input the image input
+     * @return a stream over the read bytes, that releases the buffers when closed;
+     *      {@code null} if the image is too large or the pool budget is exhausted
+     * @throws IOException - if there's an error reading the input
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public InputStream read(InputStream input) throws IOException
+    {
+        List<byte[]> chunks = new ArrayList<>();
+        boolean done = false;
+        try
+        {
+            long length = 0;
+            while (true)
+            {
+                byte[] chunk = acquire();
+                if (chunk == null)
+                {
+                    discarded.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Image discarded, out of memory budget\nBuffer pool recap: {0}", this);
+                    return null;
+                }
+                chunks.add(chunk);
+
+                // fill the chunk
+                int filled = 0;
+                int n;
+                while (filled < CHUNK_SIZE && (n = input.read(chunk, filled, CHUNK_SIZE - filled)) != -1)
+                    filled += n;
+                length += filled;
+                if (length > maxImageBytes)
+                {
+                    discarded.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Image discarded, larger than {0} bytes", maxImageBytes);
+                    return null;
+                }
+                if (filled < CHUNK_SIZE)
+                {
+                    done = true;
+                    return new ChunkInputStream(chunks, length);
+                }
+            }
+        }
+        finally
+        {
+            if (!done)
+                release(chunks);
+        }
+    }
+
+    /**
+     * Get the number of images discarded because too large or out of budget.
+     * @return the discarded images
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * Get the string representation of the {@link PhotoBufferPool PhotoBufferPool} object. <br />
+     * The string format is: <i>PhotoBufferPool{used = u,free = f,budget = b,discarded = d}</i>, where the sizes are in bytes
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "{used = " + used * CHUNK_SIZE + ",free = " + (long) free.size() * CHUNK_SIZE
+                + ",budget = " + maxTotalChunks * CHUNK_SIZE + ",discarded = " + discarded + "}";
+    }
+
+    // take a chunk, reusing a free one if any; null if the pool budget is exhausted
+    private synchronized byte[] acquire()
+    {
+        byte[] chunk = free.pollFirst();
+        if (chunk == null)
+        {
+            if (allocated >= maxTotalChunks)
+                return null;
+            chunk = new byte[CHUNK_SIZE];
+            allocated++;
+        }
+        used++;
+        return chunk;
+    }
+
+    // give the chunks back to the pool
+    private synchronized void release(List<byte[]> chunks)
+    {
+        for (byte[] chunk : chunks)
+            free.addFirst(chunk);
+        used -= chunks.size();
+        chunks.clear();
+    }
+
+    // stream over the chunks of an image; closing it releases the chunks
+    private final class ChunkInputStream extends InputStream
+    {
+        private final List<byte[]> chunks;
+        private final long length;
+        private long position;
+        private long mark;
+
+        private ChunkInputStream(List<byte[]> chunks, long length)
+        {
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        @Override
+        public synchronized int read() throws IOException
+        {
+            ensureOpen();
+            if (position >= length)
+                return -1;
+            int b = chunks.get((int) (position / CHUNK_SIZE))[(int) (position % CHUNK_SIZE)] & 0xFF;
+            position++;
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException
+        {
+            ensureOpen();
+            if (len == 0)
+                return 0;
+            if (position >= length)
+                return -1;
+            // read up to the end of the current chunk
+            int offset = (int) (position % CHUNK_SIZE);
+            int n = (int) Math.min(Math.min(len, CHUNK_SIZE - offset), length - position);
+            System.arraycopy(chunks.get((int) (position / CHUNK_SIZE)), offset, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public synchronized long skip(long n)
+        {
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized int available()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit)
+        {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset()
+        {
+            position = mark;
+        }
+
+        @Override
+        public synchronized void close()
+        {
+            if (!chunks.isEmpty())
+                release(chunks);
+        }
+
+        // the chunks may be already reused by another image
+        private void ensureOpen() throws IOException
+        {
+            if (chunks.isEmpty())
+                throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * Package for the handling of the downloaded images.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.image.ImageSniffer ImageSniffer} class that detects the images supported by Telegram
+ * 			from the HTTP headers and the first bytes of the body.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.image.PhotoBufferPool PhotoBufferPool} class that holds the downloaded images in
+ * 			reusable memory buffers.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.image.ImageSniffer ImageSniffer
+ * @see com.demetrio.hecu.image.PhotoBufferPool PhotoBufferPool
+ */
+package com.demetrio.hecu.image;
\ No newline at end of file
@@ -0,0 +1,303 @@
+package com.demetrio.hecu.journal;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Durable journal of the bot state: the chats where the bot was started and the last processed update. <br />
+ * The journal is a memory-mapped file, so recording a change is a memory write. Its layout is:
+ * <ul>
+ *     <li>a header with a magic number and the last processed update identifier, overwritten in place</li>
+ *     <li>an append-only log of records, each made of a type (activation or deactivation) and a chat identifier;
+ *     the log ends at the first zero byte</li>
+ * </ul>
+ * The state is rebuilt on construction by replaying the log. The log is then compacted, that is rewritten
+ * with only the active chats in a new file that atomically replaces the old one; the same happens
+ * whenever the log is full, doubling the file size if the active chats need it. <br />
+ * If the journal file can't be used, the error is logged and the state is kept only in memory.
+ * It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class StateJournal
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(StateJournal.class.getName());
+
+    // the magic number of the journal file ('HECJ')
+    private static final int MAGIC = 0x4845434A;
+
+    // the header length: magic and last update identifier
+    private static final int HEADER_LENGTH = 4 + 8;
+
+    // the offset of the last update identifier
+    private static final int UPDATE_OFFSET = 4;
+
+    // the record length: type and chat identifier
+    private static final int RECORD_LENGTH = 1 + 8;
+
+    // the minimum file size
+    private static final int MIN_CAPACITY = 64 * 1024;
+
+    // the record types
+    private static final byte ACTIVATE = 1;
+    private static final byte DEACTIVATE = 2;
+
+    // the journal file path
+    private final Path path;
+
+    // the active chats
+    private final Set<Long> chats = new LinkedHashSet<>();
+
+    // the last processed update identifier, -1 if none
+    private long lastUpdateId = -1;
+
+    // the mapped journal file, null if the journal can't be used
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    // the end of the log
+    private int position;
+
+    /**
+     * Construct a {@link StateJournal StateJournal}, rebuilding the state from the given file if it exists.
+     * @param path the journal file path
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public StateJournal(Path path)
+    {
+        this.path = path;
+        long start = System.nanoTime();
+        try
+        {
+            if (Files.exists(path))
+                load();
+            compact();
+        }
+        catch (IOException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error opening state journal, the state is kept only in memory", e);
+            close();
+        }
+        LOGGER.log(Level.INFO, "State journal loaded in {0,number,#} ms: {1} active chats, last update {2,number,#}",
+                new Object[]{ (System.nanoTime() - start) / 1_000_000, chats.size(), lastUpdateId });
+    }
+
+    /**
+     * Get the active chats.
+     * @return a copy of the active chat identifiers
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized Set<Long> getChats()
+    {
+        return new LinkedHashSet<>(chats);
+    }
+
+    /**
+     * Record that the bot was started in a chat.
+     * @param chatId the chat identifier
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized void activate(Long chatId)
+    {
+        if (chats.add(chatId))
+            append(ACTIVATE, chatId);
+    }
+
+    /**
+     * Record that the bot was stopped in a chat.
+     * @param chatId the chat identifier
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized void deactivate(Long chatId)
+    {
+        if (chats.remove(chatId))
+            append(DEACTIVATE, chatId);
+    }
+
+    /**
+     * Get the last processed update identifier.
+     * @return the update identifier, -1 if no update was processed
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized long getLastUpdateId()
+    {
+        return lastUpdateId;
+    }
+
+    /**
+     * Record the last processed update identifier.
+     * @param updateId the update identifier
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized void setLastUpdateId(long updateId)
+    {
+        lastUpdateId = updateId;
+        if (buffer != null)
+            buffer.putLong(UPDATE_OFFSET, updateId);
+    }
+
+    // replay the journal file
+    private void load() throws IOException
+    {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (in.size() < HEADER_LENGTH)
+                return;
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(in.size(), Integer.MAX_VALUE));
+            try
+            {
+                if (map.getInt(0) != MAGIC)
+                {
+                    LOGGER.warning("State journal with wrong magic number, ignored");
+                    return;
+                }
+                lastUpdateId = map.getLong(UPDATE_OFFSET);
+
+                // replay the records until the end of the log
+                for (int i = HEADER_LENGTH; i + RECORD_LENGTH <= map.limit(); i += RECORD_LENGTH)
+                {
+                    byte type = map.get(i);
+                    long chatId = map.getLong(i + 1);
+                    if (type == ACTIVATE)
+                        chats.add(chatId);
+                    else if (type == DEACTIVATE)
+                        chats.remove(chatId);
+                    else
+                        break;
+                }
+            }
+            finally
+            {
+                unmap(map);
+            }
+        }
+    }
+
+    // append a record, compacting the log if it is full
+    private void append(byte type, long chatId)
+    {
+        if (buffer == null)
+            return;
+        // the compacted log already contains the change
+        if (position + RECORD_LENGTH > buffer.capacity())
+        {
+            try
+            {
+                compact();
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(Level.SEVERE, "Error compacting state journal, the state is kept only in memory", e);
+                close();
+            }
+            return;
+        }
+        // the type is written last: a record is in the log only when complete
+        buffer.putLong(position + 1, chatId);
+        buffer.put(position, type);
+        position += RECORD_LENGTH;
+    }
+
+    // rewrite the journal with only the active chats and switch to the new file
+    private void compact() throws IOException
+    {
+        // at least twice the active chats, so the log doesn't get full right away
+        int needed = HEADER_LENGTH + 2 * chats.size() * RECORD_LENGTH;
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed)
+            capacity *= 2;
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            MappedByteBuffer map = out.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            map.putInt(0, MAGIC);
+            map.putLong(UPDATE_OFFSET, lastUpdateId);
+            int i = HEADER_LENGTH;
+            for (Long chatId : chats)
+            {
+                map.putLong(i + 1, chatId);
+                map.put(i, ACTIVATE);
+                i += RECORD_LENGTH;
+            }
+            map.force();
+            unmap(map);
+        }
+
+        // a mapped file can't be replaced on some systems (e.g. Windows): release the journal first
+        close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // map the new journal
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        position = HEADER_LENGTH + chats.size() * RECORD_LENGTH;
+    }
+
+    // release the journal file and its mapping
+    private void close()
+    {
+        if (buffer != null)
+        {
+            MappedByteBuffer mapped = buffer;
+            buffer = null;
+            unmap(mapped);
+        }
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(Level.SEVERE, "Error closing state journal", e);
+            }
+            channel = null;
+        }
+    }
+
+    // release a mapping now instead of when it's garbage collected; the buffer must not be used anymore
+    private static void unmap(MappedByteBuffer map)
+    {
+        try
+        {
+            try
+            {
+                // Java 9+
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), map);
+            }
+            catch (NoSuchMethodException e)
+            {
+                // Java 8
+                Method cleaner = map.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object instance = cleaner.invoke(map);
+                if (instance != null)
+                    instance.getClass().getMethod("clean").invoke(instance);
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            LOGGER.log(Level.FINE, "State journal mapping not released, it will be by the garbage collector", e);
+        }
+    }
+}
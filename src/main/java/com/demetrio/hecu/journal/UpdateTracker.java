@@ -0,0 +1,111 @@
+package com.demetrio.hecu.journal;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Filter of the duplicate updates received by the bot. <br />
+ * Telegram may deliver an update again, e.g. after a restart or a failed acknowledgement; how a duplicate is
+ * recognized depends on the delivery:
+ * <ul>
+ *     <li>long polling delivers the updates in order, from a single thread: an update is a duplicate if its
+ *     identifier is not greater than the last one received</li>
+ *     <li>a webhook delivers the updates concurrently and not in order: an update is a duplicate if its identifier
+ *     is among the recently received ones, so a lower identifier never seen is still accepted</li>
+ * </ul>
+ * It also tracks the updates still being processed, so the last processed update is committed only when it and
+ * all the previous ones are done: an update interrupted by a crash is processed again after the restart. <br />
+ * It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class UpdateTracker
+{
+    // the recently received updates remembered in webhook mode
+    private static final int MAX_RECENT = 10000;
+
+    // true if the updates are delivered in order
+    private final boolean ordered;
+
+    // the greatest update identifier received, -1 if none
+    private long lastReceived;
+
+    // the recently received update identifiers, the oldest first (webhook mode)
+    private final Set<Integer> recent = new LinkedHashSet<>();
+
+    // the updates received and not yet processed
+    private final TreeSet<Integer> processing = new TreeSet<>();
+
+    // the last update such that it and all the previous ones were processed
+    private long committed;
+
+    /**
+     * Construct an {@link UpdateTracker UpdateTracker}.
+     * @param lastUpdateId the last update identifier processed before a restart, -1 if none
+     * @param ordered {@code true} if the updates are delivered in order (long polling),
+     *                {@code false} if they may arrive concurrently and out of order (webhook)
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public UpdateTracker(long lastUpdateId, boolean ordered)
+    {
+        this.lastReceived = lastUpdateId;
+        this.committed = lastUpdateId;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Record a received update, if it is not a duplicate. An accepted update must be then
+     * {@link #complete(int) completed}, even if its processing fails.
+     * @param updateId the update identifier
+     * @return {@code true} if the update must be processed, {@code false} if it is a duplicate
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized boolean accept(int updateId)
+    {
+        if (ordered)
+        {
+            if (updateId <= lastReceived)
+                return false;
+        }
+        else
+        {
+            if (!recent.add(updateId))
+                return false;
+            // forget the oldest update
+            if (recent.size() > MAX_RECENT)
+                recent.remove(recent.iterator().next());
+        }
+        lastReceived = Math.max(lastReceived, updateId);
+        processing.add(updateId);
+        return true;
+    }
+
+    /**
+     * Record that an accepted update was processed.
+     * @param updateId the update identifier
+     * @return the last update such that it and all the previous received ones were processed,
+     *      to be committed in the {@link StateJournal StateJournal}
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public synchronized long complete(int updateId)
+    {
+        processing.remove(updateId);
+        // everything below the oldest update in progress is done
+        long done = processing.isEmpty() ? lastReceived : processing.first() - 1;
+        committed = Math.max(committed, done);
+        return committed;
+    }
+
+    /**
+     * Get the string representation of the {@link UpdateTracker UpdateTracker} object. <br />
+     * The string format is: <i>UpdateTracker{ordered = o,lastReceived = l,committed = c,processing = p}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "{ordered = " + ordered + ",lastReceived = " + lastReceived + ",committed = " + committed
+                + ",processing = " + processing.size() + "}";
+    }
+}
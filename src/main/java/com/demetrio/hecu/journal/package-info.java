@@ -0,0 +1,19 @@
+/**
+ * Package for the durable state of the bot.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.journal.StateJournal StateJournal} class that records on disk the chats where the
+ * 			bot was started and the last processed update.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.journal.UpdateTracker UpdateTracker} class that filters the duplicate updates.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.journal.StateJournal StateJournal
+ * @see com.demetrio.hecu.journal.UpdateTracker UpdateTracker
+ */
+package com.demetrio.hecu.journal;
\ No newline at end of file
@@ -0,0 +1,181 @@
+package com.demetrio.hecu.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of latencies, in the style of HdrHistogram. <br />
+ * The latencies are recorded in microseconds: values below 16 have a bucket each, then every power of two
+ * is split in 16 linear buckets, so a value is known with a relative error below 6.25% over the whole range
+ * (up to about 12 days, larger values fall in the last bucket). <br />
+ * Recording is a few arithmetic operations and an atomic increment, without locks nor allocations,
+ * so it can be called on every request. It is thread-safe; the statistics read while recording is in progress
+ * may be slightly inconsistent with each other.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class LatencyHistogram implements StageMXBean
+{
+    // the bits of the linear buckets of each power of two
+    private static final int SUB_BITS = 4;
+
+    // the linear buckets of each power of two
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    // the max recorded value in microseconds (2^40, about 12 days)
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    // the bucket counts
+    private final AtomicLongArray buckets = new AtomicLongArray(index(MAX_VALUE) + 1);
+
+    // the count and the sum of the recorded values
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    // the max recorded value
+    private final AtomicLong max = new AtomicLong();
+
+    // the stage name
+    private final String name;
+
+    /**
+     * Construct an empty {@link LatencyHistogram LatencyHistogram}.
+     * @param name the name of the measured stage
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Record a latency.
+     * @param nanos the latency in nanoseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void record(long nanos)
+    {
+        long micros = Math.min(Math.max(nanos / 1000, 0), MAX_VALUE);
+        buckets.incrementAndGet(index(micros));
+        count.increment();
+        sum.add(micros);
+        if (micros > max.get())
+            max.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Record the latency from a start time to now.
+     * @param start the start time, as given by {@link System#nanoTime() System.nanoTime()}
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void recordSince(long start)
+    {
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * Get the name of the measured stage.
+     * @return the stage name
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the sum of the recorded latencies.
+     * @return the sum in microseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getSumMicros() {
+        return sum.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / (double) n / 1000;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return max.get() / 1000.0;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return getPercentileMicros(50) / 1000.0;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return getPercentileMicros(90) / 1000.0;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return getPercentileMicros(99) / 1000.0;
+    }
+
+    /**
+     * Get a percentile of the recorded latencies, that is the middle of the bucket containing it.
+     * @param percentile the percentile, between 0 and 100
+     * @return the percentile in microseconds, 0 if nothing was recorded
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public long getPercentileMicros(double percentile)
+    {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++)
+            total += buckets.get(i);
+        if (total == 0)
+            return 0;
+
+        // the rank of the percentile, at least the first value
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++)
+        {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                // the middle of the bucket, never above the max
+                return Math.min((lowerBound(i) + lowerBound(i + 1) - 1) / 2, max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Get the string representation of the {@link LatencyHistogram LatencyHistogram} object. <br />
+     * The string format is: <i>LatencyHistogram{name = n,count = c,p50 = p,p99 = q,max = m}</i>,
+     * where the times are in milliseconds
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{name = " + name + ",count = " + getCount() + ",p50 = " + getP50Millis()
+                + ",p99 = " + getP99Millis() + ",max = " + getMaxMillis() + "}";
+    }
+
+    // the bucket of a value: linear below SUB_COUNT, then SUB_COUNT buckets for each power of two
+    private static int index(long value)
+    {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    // the lowest value of a bucket
+    private static long lowerBound(int index)
+    {
+        if (index < SUB_COUNT)
+            return index;
+        int shift = index / SUB_COUNT - 1;
+        return (long) (index - shift * SUB_COUNT) << shift;
+    }
+}
@@ -0,0 +1,144 @@
+package com.demetrio.hecu.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the bot metrics:
+ * <ul>
+ *     <li>the latency of each pipeline stage (e.g. synthesis, encode, upload), as a {@link LatencyHistogram LatencyHistogram}</li>
+ *     <li>counters, e.g. the requests per type</li>
+ *     <li>gauges, values read when the metrics are exported, e.g. the photo quota used today</li>
+ * </ul>
+ * Each stage is exported as a JMX MXBean named <i>com.demetrio.hecu:type=Stage,name=&lt;stage&gt;</i>, and the
+ * counters and gauges as <i>com.demetrio.hecu:type=Metrics</i>; all of them can also be exported in Prometheus
+ * text format by a {@link MetricsServer MetricsServer}. <br />
+ * A counter name may contain Prometheus labels, e.g. <i>requests_total{type="say"}</i>. <br />
+ * The hot paths should get their histogram once and keep it, so that recording doesn't look it up.
+ * It is thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class Metrics implements MetricsMXBean
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+
+    // the JMX domain
+    private static final String DOMAIN = "com.demetrio.hecu";
+
+    // instance
+    private static final Metrics INSTANCE = new Metrics();
+
+    // the stage latencies, k = stage name
+    private final Map<String, LatencyHistogram> stages = new ConcurrentHashMap<>();
+
+    // the counters, k = counter name
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    // the gauges, k = gauge name
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    // singleton: registers itself in JMX
+    private Metrics()
+    {
+        register(DOMAIN + ":type=Metrics", this);
+    }
+
+    /**
+     * Get the Metrics singleton instance
+     * @return the Metrics instance
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the latency histogram of a stage, creating and registering it in JMX if it's the first time.
+     * @param name the stage name
+     * @return the stage histogram
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public LatencyHistogram getStage(String name)
+    {
+        LatencyHistogram stage = stages.get(name);
+        if (stage == null)
+        {
+            LatencyHistogram created = new LatencyHistogram(name);
+            stage = stages.putIfAbsent(name, created);
+            if (stage == null)
+            {
+                register(DOMAIN + ":type=Stage,name=" + ObjectName.quote(name), created);
+                stage = created;
+            }
+        }
+        return stage;
+    }
+
+    /**
+     * Increment a counter by one, creating it if it's the first time.
+     * @param name the counter name, optionally with labels
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void increment(String name)
+    {
+        counters.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Register a gauge, replacing the one with the same name.
+     * @param name the gauge name
+     * @param value the supplier of the gauge value, called when the metrics are read
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void gauge(String name, LongSupplier value)
+    {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Get the stage latency histograms.
+     * @return the histograms sorted by stage name, k = stage name
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Map<String, LatencyHistogram> getStages() {
+        return new TreeMap<>(stages);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((k, v) -> values.put(k, v.sum()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((k, v) -> values.put(k, v.getAsLong()));
+        return values;
+    }
+
+    // register an MXBean in the platform MBean server; the metrics keep working without JMX
+    private static void register(String name, Object bean)
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+        }
+        catch (JMException e)
+        {
+            LOGGER.log(Level.WARNING, "Error registering MBean " + name, e);
+        }
+    }
+}
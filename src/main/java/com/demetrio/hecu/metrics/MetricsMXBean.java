@@ -0,0 +1,26 @@
+package com.demetrio.hecu.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the bot counters and gauges, exported through JMX.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see Metrics Metrics
+ */
+public interface MetricsMXBean
+{
+    /**
+     * Get the counters, e.g. the requests per type.
+     * @return the counter values, k = counter name
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Get the gauges, e.g. the photo quota used today.
+     * @return the gauge values, k = gauge name
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    Map<String, Long> getGauges();
+}
@@ -0,0 +1,132 @@
+package com.demetrio.hecu.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP endpoint exporting the {@link Metrics Metrics} in Prometheus text format at <i>/metrics</i>. <br />
+ * It listens only on the loopback address, so the metrics are not exposed outside the host.
+ * The stages are exported as summaries in seconds (<i>hecu_stage_seconds</i> with the 0.5, 0.9 and 0.99
+ * quantiles), the counters and the gauges with the <i>hecu_</i> prefix.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class MetricsServer
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(MetricsServer.class.getName());
+
+    // the Prometheus text format content type
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // the exported quantiles
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    // the exported metrics
+    private final Metrics metrics;
+
+    // the HTTP server
+    private final HttpServer server;
+
+    /**
+     * Construct a {@link MetricsServer MetricsServer} and start it.
+     * @param metrics the metrics to export
+     * @param port the local port
+     * @throws IOException - if the port can't be bound
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public MetricsServer(Metrics metrics, int port) throws IOException
+    {
+        this.metrics = metrics;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        // a scrape is cheap, one thread is enough
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "hecu-metrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        LOGGER.log(Level.INFO, "Metrics endpoint listening on http://{0}:{1,number,#}/metrics",
+                new Object[]{ server.getAddress().getHostString(), server.getAddress().getPort() });
+    }
+
+    /**
+     * Get the metrics in Prometheus text format.
+     * @return the metrics text
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String scrape()
+    {
+        StringBuilder sb = new StringBuilder(4096);
+
+        Map<String, LatencyHistogram> stages = metrics.getStages();
+        if (!stages.isEmpty())
+        {
+            sb.append("# TYPE hecu_stage_seconds summary\n");
+            for (LatencyHistogram stage : stages.values())
+            {
+                String label = "stage=\"" + stage.getName() + "\"";
+                for (double q : QUANTILES)
+                    sb.append("hecu_stage_seconds{").append(label).append(",quantile=\"").append(q).append("\"} ")
+                            .append(stage.getPercentileMicros(q * 100) / 1e6).append('\n');
+                sb.append("hecu_stage_seconds_sum{").append(label).append("} ").append(stage.getSumMicros() / 1e6).append('\n');
+                sb.append("hecu_stage_seconds_count{").append(label).append("} ").append(stage.getCount()).append('\n');
+            }
+        }
+        append(sb, metrics.getCounters(), "counter");
+        append(sb, metrics.getGauges(), "gauge");
+        return sb.toString();
+    }
+
+    // append sorted metrics, with a type line for each metric name (the name without labels)
+    private static void append(StringBuilder sb, Map<String, Long> values, String type)
+    {
+        String last = null;
+        for (Map.Entry<String, Long> e : values.entrySet())
+        {
+            int brace = e.getKey().indexOf('{');
+            String name = brace == -1 ? e.getKey() : e.getKey().substring(0, brace);
+            if (!name.equals(last))
+            {
+                sb.append("# TYPE hecu_").append(name).append(' ').append(type).append('\n');
+                last = name;
+            }
+            sb.append("hecu_").append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+    }
+
+    // answer a scrape
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if (!exchange.getRequestMethod().equals("GET"))
+            {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+}
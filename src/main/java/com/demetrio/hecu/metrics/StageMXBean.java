@@ -0,0 +1,53 @@
+package com.demetrio.hecu.metrics;
+
+/**
+ * Management interface of the latency of a pipeline stage, exported through JMX. <br />
+ * The times are in milliseconds; the percentiles have the precision of the histogram buckets.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see LatencyHistogram LatencyHistogram
+ */
+public interface StageMXBean
+{
+    /**
+     * Get the number of recorded executions of the stage.
+     * @return the executions
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    long getCount();
+
+    /**
+     * Get the mean latency of the stage.
+     * @return the mean latency in milliseconds, 0 if nothing was recorded
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    double getMeanMillis();
+
+    /**
+     * Get the max latency of the stage.
+     * @return the max latency in milliseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    double getMaxMillis();
+
+    /**
+     * Get the median latency of the stage.
+     * @return the median latency in milliseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    double getP50Millis();
+
+    /**
+     * Get the 90th percentile of the latency of the stage.
+     * @return the 90th percentile in milliseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    double getP90Millis();
+
+    /**
+     * Get the 99th percentile of the latency of the stage.
+     * @return the 99th percentile in milliseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    double getP99Millis();
+}
@@ -0,0 +1,29 @@
+/**
+ * Package for the bot metrics.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.metrics.Metrics Metrics} class that registers the stage latencies, the counters
+ * 			and the gauges, exporting them through JMX.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.metrics.LatencyHistogram LatencyHistogram} class that records the latencies
+ * 			of a stage in log-linear buckets.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.metrics.MetricsServer MetricsServer} class that exports the metrics in
+ * 			Prometheus text format on a local HTTP endpoint.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.metrics.StageMXBean StageMXBean} and
+ * 			{@link com.demetrio.hecu.metrics.MetricsMXBean MetricsMXBean} JMX management interfaces.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.metrics.Metrics Metrics
+ * @see com.demetrio.hecu.metrics.LatencyHistogram LatencyHistogram
+ * @see com.demetrio.hecu.metrics.MetricsServer MetricsServer
+ */
+package com.demetrio.hecu.metrics;
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.demetrio.hecu.text;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BK-tree of words under the case-insensitive Levenshtein distance, used to find the known words closest to
+ * an unknown one. <br />
+ * Each child of a node is at a distinct distance from it, so a search within distance <i>d</i> visits only the
+ * children at distance between <i>k - d</i> and <i>k + d</i>, where <i>k</i> is the distance from the node
+ * (triangle inequality): a search touches a small part of the words. <br />
+ * It is built once and then only read, so it is thread-safe after construction.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class BkTree
+{
+    // the root, null if the tree is empty
+    private Node root;
+
+    // a word and its children, k = distance from the word
+    private static final class Node
+    {
+        private final String word;
+        private final Map<Integer, Node> children = new HashMap<>(4);
+
+        private Node(String word)
+        {
+            this.word = word;
+        }
+    }
+
+    /**
+     * Add a word to the tree. A word already in the tree (ignoring case) is not added again.
+     * @param word the word
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void add(String word)
+    {
+        if (root == null)
+        {
+            root = new Node(word);
+            return;
+        }
+        Node node = root;
+        while (true)
+        {
+            int distance = distance(word, node.word);
+            if (distance == 0)
+                return;
+            Node child = node.children.get(distance);
+            if (child == null)
+            {
+                node.children.put(distance, new Node(word));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Find the words closest to a word, within a max distance.
+     * @param word the word
+     * @param maxDistance the max distance
+     * @param limit the max number of returned words
+     * @return the words found, sorted by distance and then alphabetically
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public List<String> search(String word, int maxDistance, int limit)
+    {
+        List<Node> found = new ArrayList<>();
+        List<Integer> distances = new ArrayList<>();
+        if (root != null)
+        {
+            List<Node> pending = new ArrayList<>();
+            pending.add(root);
+            while (!pending.isEmpty())
+            {
+                Node node = pending.remove(pending.size() - 1);
+                int distance = distance(word, node.word);
+                if (distance <= maxDistance)
+                {
+                    found.add(node);
+                    distances.add(distance);
+                }
+                for (Map.Entry<Integer, Node> child : node.children.entrySet())
+                {
+                    if (Math.abs(child.getKey() - distance) <= maxDistance)
+                        pending.add(child.getValue());
+                }
+            }
+        }
+
+        // sort by distance, then alphabetically
+        List<Integer> order = new ArrayList<>(found.size());
+        for (int i = 0; i < found.size(); i++)
+            order.add(i);
+        order.sort(Comparator.<Integer>comparingInt(distances::get)
+                .thenComparing(i -> found.get(i).word, String.CASE_INSENSITIVE_ORDER));
+        List<String> words = new ArrayList<>(Math.min(limit, order.size()));
+        for (int i = 0; i < order.size() && words.size() < limit; i++)
+            words.add(found.get(order.get(i)).word);
+        return words;
+    }
+
+    /**
+     * Get the Levenshtein distance of two words, ignoring case: the min number of insertions,
+     * deletions and substitutions of a character that change a word into the other.
+     * @param a a word
+     * @param b the other word
+     * @return the distance
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static int distance(CharSequence a, CharSequence b)
+    {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++)
+        {
+            current[0] = i;
+            char ca = Character.toLowerCase(a.charAt(i - 1));
+            for (int j = 1; j <= b.length(); j++)
+            {
+                int cost = ca == Character.toLowerCase(b.charAt(j - 1)) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
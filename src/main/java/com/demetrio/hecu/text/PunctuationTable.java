@@ -0,0 +1,209 @@
+package com.demetrio.hecu.text;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Table of the punctuation said by the bot, loaded from the <i>punctuation.properties</i> file. <br />
+ * Each entry maps a punctuation (a single character like <i>?</i> or a run like <i>...</i>) to what is played
+ * in its place:
+ * <ul>
+ *     <li>a symbol clip of the word bank, e.g. <i>, = _comma</i></li>
+ *     <li>a silence, with its length in milliseconds, e.g. <i>... = 750ms</i></li>
+ * </ul>
+ * A silence is played by a clip of the word bank too, named <i>_silence</i> followed by its length
+ * (e.g. <i>_silence750</i>): the bank must contain the silences of {@link #getSilences() getSilences()}. <br />
+ * The longest punctuation matching at a position wins, so <i>...</i> is a single symbol and not three periods.
+ * The match allocates nothing. It is immutable, so thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class PunctuationTable
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(PunctuationTable.class.getName());
+
+    // punctuation table path
+    private static final String PUNCTUATION_PATH = "/punctuation.properties";
+
+    // the prefix of the silence clips
+    private static final String SILENCE_PREFIX = "_silence";
+
+    // the punctuation, the longest first
+    private final String[] keys;
+
+    // the clip of each punctuation
+    private final String[] clips;
+
+    // the first characters of the punctuation, for a fast reject
+    private final String firsts;
+
+    // the silences, k = clip name, v = length in milliseconds
+    private final Map<String, Integer> silences = new LinkedHashMap<>();
+
+    /**
+     * Construct a {@link PunctuationTable PunctuationTable} from the properties, where the key is
+     * the punctuation and the value is a clip name or a silence length (e.g. <i>750ms</i>).
+     * A malformed entry is logged and ignored.
+     * @param props the table properties
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public PunctuationTable(Properties props)
+    {
+        List<String> punctuation = new ArrayList<>();
+        for (String key : props.stringPropertyNames())
+        {
+            if (key.isEmpty() || props.getProperty(key).trim().isEmpty())
+                LOGGER.log(Level.WARNING, "Punctuation \"{0}\" ignored, empty punctuation or clip", key);
+            else
+                punctuation.add(key);
+        }
+        // the longest first, so a run is matched before its prefixes
+        punctuation.sort((a, b) -> a.length() != b.length() ? b.length() - a.length() : a.compareTo(b));
+
+        List<String> keys = new ArrayList<>();
+        List<String> clips = new ArrayList<>();
+        StringBuilder firsts = new StringBuilder();
+        for (String key : punctuation)
+        {
+            String value = props.getProperty(key).trim();
+            String clip = value;
+            if (value.endsWith("ms"))
+            {
+                try
+                {
+                    int millis = Integer.parseInt(value.substring(0, value.length() - 2).trim());
+                    if (millis <= 0)
+                        throw new NumberFormatException("Not positive: " + millis);
+                    clip = SILENCE_PREFIX + millis;
+                    silences.put(clip, millis);
+                }
+                catch (NumberFormatException e)
+                {
+                    LOGGER.log(Level.WARNING, "Punctuation \"" + key + "\" ignored, wrong silence length", e);
+                    continue;
+                }
+            }
+            keys.add(key);
+            clips.add(clip);
+            if (firsts.indexOf(key.substring(0, 1)) == -1)
+                firsts.append(key.charAt(0));
+        }
+        this.keys = keys.toArray(new String[0]);
+        this.clips = clips.toArray(new String[0]);
+        this.firsts = firsts.toString();
+    }
+
+    /**
+     * Load the table from the <i>punctuation.properties</i> file. <br />
+     * If the file can't be read, the error is logged and the table has only the comma and the period.
+     * @return the punctuation table
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static PunctuationTable load()
+    {
+        Properties props = new Properties();
+        // get and finally close the InputStream of punctuation.properties
+        try (InputStream input = PunctuationTable.class.getResourceAsStream(PUNCTUATION_PATH))
+        {
+            if (input == null)
+                throw new IOException(PUNCTUATION_PATH + " not found");
+            props.load(input);
+        }
+        // if the table was not loaded correctly
+        catch (IOException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error loading punctuation table, only comma and period are said", e);
+            props.clear();
+            props.setProperty(",", "_comma");
+            props.setProperty(".", "_period");
+        }
+        return new PunctuationTable(props);
+    }
+
+    /**
+     * Find the longest punctuation starting at a position of a text.
+     * @param text the text
+     * @param start the position
+     * @param end the end of the text to check, exclusive
+     * @return the punctuation symbol, -1 if no punctuation starts at the position
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public int match(CharSequence text, int start, int end)
+    {
+        if (firsts.indexOf(text.charAt(start)) == -1)
+            return -1;
+        for (int symbol = 0; symbol < keys.length; symbol++)
+        {
+            String key = keys[symbol];
+            if (key.length() > end - start)
+                continue;
+            int i = 0;
+            while (i < key.length() && key.charAt(i) == text.charAt(start + i))
+                i++;
+            if (i == key.length())
+                return symbol;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the number of punctuation symbols.
+     * @return the number of symbols
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Get the punctuation of a symbol.
+     * @param symbol the symbol, as returned by {@link #match(CharSequence, int, int) match(CharSequence, int, int)}
+     * @return the punctuation (e.g. <i>...</i>)
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String getPunctuation(int symbol) {
+        return keys[symbol];
+    }
+
+    /**
+     * Get the clip played for a symbol.
+     * @param symbol the symbol, as returned by {@link #match(CharSequence, int, int) match(CharSequence, int, int)}
+     * @return the clip name (e.g. <i>_comma</i> or <i>_silence750</i>)
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public String getClip(int symbol) {
+        return clips[symbol];
+    }
+
+    /**
+     * Get the silences played for the punctuation, that the word bank must contain.
+     * @return the silences, k = clip name, v = length in milliseconds
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Map<String, Integer> getSilences() {
+        return Collections.unmodifiableMap(silences);
+    }
+
+    /**
+     * Get the string representation of the {@link PunctuationTable PunctuationTable} object. <br />
+     * The string format is: <i>PunctuationTable{p1 = c1,p2 = c2,...}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName()).append('{');
+        for (int i = 0; i < keys.length; i++)
+            sb.append(i > 0 ? "," : "").append(keys[i]).append(" = ").append(clips[i]);
+        return sb.append('}').toString();
+    }
+}
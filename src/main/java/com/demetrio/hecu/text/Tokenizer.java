@@ -0,0 +1,117 @@
+package com.demetrio.hecu.text;
+
+/**
+ * Single-pass tokenizer of the sentences sent to the bot. <br />
+ * It walks the text once, splitting it into words and punctuation symbols:
+ * <ul>
+ *     <li>whitespace separates the words and is dropped</li>
+ *     <li>a punctuation of the {@link PunctuationTable PunctuationTable} is a symbol, and it ends the word
+ *     before it (e.g. <i>hello, world...</i> is <i>hello</i>, <i>,</i>, <i>world</i>, <i>...</i>)</li>
+ *     <li>any other character is part of a word</li>
+ * </ul>
+ * The tokens are passed to a {@link Listener Listener} as ranges of the text, so nothing is copied
+ * and no regex is run. It is immutable, so thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class Tokenizer
+{
+    // the punctuation symbols
+    private final PunctuationTable punctuation;
+
+    /**
+     * Receiver of the tokens of a text, in order.
+     * @author Alessandro Chiariello (Demetrio)
+     * @version 1.0
+     */
+    public interface Listener
+    {
+        /**
+         * Receive a word.
+         * @param text the tokenized text
+         * @param start the start index of the word, inclusive
+         * @param end the end index of the word, exclusive
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        void word(CharSequence text, int start, int end);
+
+        /**
+         * Receive a punctuation symbol.
+         * @param symbol the symbol of the {@link PunctuationTable PunctuationTable}
+         * @author Alessandro Chiariello (Demetrio)
+         */
+        void symbol(int symbol);
+    }
+
+    /**
+     * Construct a {@link Tokenizer Tokenizer} with the given punctuation.
+     * @param punctuation the punctuation table
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Tokenizer(PunctuationTable punctuation)
+    {
+        this.punctuation = punctuation;
+    }
+
+    /**
+     * Tokenize a text.
+     * @param text the text
+     * @param listener the receiver of the tokens
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void tokenize(CharSequence text, Listener listener)
+    {
+        tokenize(text, 0, text.length(), listener);
+    }
+
+    /**
+     * Tokenize a range of a text.
+     * @param text the text
+     * @param start the start index of the range, inclusive
+     * @param end the end index of the range, exclusive
+     * @param listener the receiver of the tokens
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void tokenize(CharSequence text, int start, int end, Listener listener)
+    {
+        // the start of the current word, -1 if between words
+        int word = -1;
+        int i = start;
+        while (i < end)
+        {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch))
+            {
+                if (word != -1)
+                    listener.word(text, word, i);
+                word = -1;
+                i++;
+                continue;
+            }
+            int symbol = punctuation.match(text, i, end);
+            if (symbol != -1)
+            {
+                if (word != -1)
+                    listener.word(text, word, i);
+                word = -1;
+                listener.symbol(symbol);
+                i += punctuation.getPunctuation(symbol).length();
+                continue;
+            }
+            if (word == -1)
+                word = i;
+            i++;
+        }
+        if (word != -1)
+            listener.word(text, word, end);
+    }
+
+    /**
+     * Get the punctuation table of the tokenizer.
+     * @return the punctuation table
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public PunctuationTable getPunctuation() {
+        return punctuation;
+    }
+}
@@ -0,0 +1,169 @@
+package com.demetrio.hecu.text;
+
+import java.util.List;
+
+import com.demetrio.hecu.audio.Clip;
+import com.demetrio.hecu.audio.WordBank;
+
+/**
+ * Case-folded index of the words of a {@link WordBank WordBank}, built once when the bank is loaded. <br />
+ * A word is found whatever its case, with the same rules of the bank lookup:
+ * <ul>
+ *     <li>a word written uppercase (e.g. <i>SECTOR</i>) is looked up uppercase and then lowercase</li>
+ *     <li>any other word (e.g. <i>sector</i> or <i>SeCtOr</i>) is looked up lowercase and then uppercase</li>
+ * </ul>
+ * The index is an open addressing hash table keyed by the lowercase words, with the lowercase and the uppercase
+ * clip of each key: a lookup is a single probe over a range of a {@link CharSequence CharSequence}, folding the
+ * case character by character, so it allocates nothing, not even the substring of the word. <br />
+ * On a miss, the closest known words are found in a {@link BkTree BkTree} of the bank words. <br />
+ * The symbol words (starting with <i>_</i>) are never suggested. It is immutable, so thread-safe.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class WordIndex
+{
+    // the max number of suggestions of an unknown word
+    private static final int MAX_SUGGESTIONS = 3;
+
+    // the lowercase keys, null if the slot is empty
+    private final String[] keys;
+
+    // the lowercase and the uppercase clips of each key, null if the bank doesn't have them
+    private final Clip[] lower;
+    private final Clip[] upper;
+
+    // the mask of the slot index (the capacity is a power of two)
+    private final int mask;
+
+    // the tree of the words for the suggestions
+    private final BkTree tree = new BkTree();
+
+    /**
+     * Construct the {@link WordIndex WordIndex} of a bank.
+     * @param bank the word bank
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public WordIndex(WordBank bank)
+    {
+        // at most half full, so the probe sequences are short
+        int capacity = Integer.highestOneBit(Math.max(8, bank.getWords().size() * 2 - 1)) << 1;
+        keys = new String[capacity];
+        lower = new Clip[capacity];
+        upper = new Clip[capacity];
+        mask = capacity - 1;
+
+        for (String word : bank.getWords())
+        {
+            String key = word.toLowerCase();
+            boolean isLower = word.equals(key);
+            boolean isUpper = word.equals(word.toUpperCase());
+            // a word neither lowercase nor uppercase can't be found by the bank lookup rules
+            if (!isLower && !isUpper)
+                continue;
+
+            int slot = slot(key, 0, key.length());
+            keys[slot] = key;
+            if (isLower)
+                lower[slot] = bank.get(word);
+            if (isUpper)
+                upper[slot] = bank.get(word);
+            if (!word.startsWith("_"))
+                tree.add(isLower || lower[slot] == null ? word : key);
+        }
+    }
+
+    /**
+     * Get the clip of a word.
+     * @param word the word, in any case
+     * @return the word clip, {@code null} if the word is not in the bank
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Clip get(CharSequence word)
+    {
+        return get(word, 0, word.length());
+    }
+
+    /**
+     * Get the clip of the word in a range of a {@link CharSequence CharSequence}, without allocating.
+     * @param text the text containing the word
+     * @param start the start index of the word, inclusive
+     * @param end the end index of the word, exclusive
+     * @return the word clip, {@code null} if the word is not in the bank
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public Clip get(CharSequence text, int start, int end)
+    {
+        int slot = slot(text, start, end);
+        if (keys[slot] == null)
+            return null;
+        if (isUpperCase(text, start, end))
+            return upper[slot] != null ? upper[slot] : lower[slot];
+        return lower[slot] != null ? lower[slot] : upper[slot];
+    }
+
+    /**
+     * Append a word in the case that selects its clip: uppercase if the word is uppercase, lowercase otherwise. <br />
+     * Two words with the same form have the same clip, so the form can be used as a key without looking the word up.
+     * @param sb the builder to append the word to
+     * @param text the text containing the word
+     * @param start the start index of the word, inclusive
+     * @param end the end index of the word, exclusive
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public static void appendKey(StringBuilder sb, CharSequence text, int start, int end)
+    {
+        boolean upperCase = isUpperCase(text, start, end);
+        for (int i = start; i < end; i++)
+            sb.append(upperCase ? Character.toUpperCase(text.charAt(i)) : Character.toLowerCase(text.charAt(i)));
+    }
+
+    /**
+     * Get the known words closest to an unknown word: at most three words, within one edit
+     * for words up to four characters and within two edits for longer words.
+     * @param word the unknown word
+     * @return the closest words, the closest first; empty if no word is close enough
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public List<String> suggest(String word)
+    {
+        return tree.search(word, word.length() <= 4 ? 1 : 2, MAX_SUGGESTIONS);
+    }
+
+    // the slot of a word: its key slot if the key is in the index, otherwise the empty slot where it would go
+    private int slot(CharSequence text, int start, int end)
+    {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+        // spread the high bits, as HashMap does
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null && !matches(keys[slot], text, start, end))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    // check if a key is the lowercase form of a word
+    private static boolean matches(String key, CharSequence text, int start, int end)
+    {
+        if (key.length() != end - start)
+            return false;
+        for (int i = 0; i < key.length(); i++)
+        {
+            if (key.charAt(i) != Character.toLowerCase(text.charAt(start + i)))
+                return false;
+        }
+        return true;
+    }
+
+    // check if a word is uppercase: every letter is uppercase
+    private static boolean isUpperCase(CharSequence text, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            char ch = text.charAt(i);
+            if (Character.isLetter(ch) && !Character.isUpperCase(ch))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Package for the processing of the text sent to the bot.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.text.Tokenizer Tokenizer} class that splits a sentence in words and punctuation
+ * 			in a single pass.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.text.PunctuationTable PunctuationTable} class that maps the punctuation to
+ * 			the symbol clips and silences.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.text.WordIndex WordIndex} class that finds the clip of a word whatever its case,
+ * 			without allocating, and suggests the closest words of an unknown one.
+ * 		</li>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.text.BkTree BkTree} class that finds the closest words by edit distance.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.text.Tokenizer Tokenizer
+ * @see com.demetrio.hecu.text.PunctuationTable PunctuationTable
+ * @see com.demetrio.hecu.text.WordIndex WordIndex
+ * @see com.demetrio.hecu.text.BkTree BkTree
+ */
+package com.demetrio.hecu.text;
\ No newline at end of file
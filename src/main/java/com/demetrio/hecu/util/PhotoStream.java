@@ -1,17 +1,21 @@
 package com.demetrio.hecu.util;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
  * Bean class for containing the result of <i>photo</i> request.<br/>
  * A {@link java.util.List List} of instances of this class is returned by
- * {@link com.demetrio.hecu.Hecu#getPhotos(String, int, Runnable) getPhotos(String, int, Runnable)} and
- * {@link com.demetrio.hecu.Hecu#getRandom(int, int, int, Runnable) getRandom(int, int, int, Runnable)} methods.
+ * {@link com.demetrio.hecu.Hecu#getPhotos(String, int, Runnable, java.util.function.BooleanSupplier) getPhotos(String, int, Runnable, BooleanSupplier)} and
+ * {@link com.demetrio.hecu.Hecu#getRandom(int, int, int, Runnable) getRandom(int, int, int, Runnable)} methods.<br/>
+ * The image is held in memory buffers, released when the {@link PhotoStream PhotoStream} is closed:
+ * it must be closed once the image is sent or discarded.
  * @author Alessandro Chiariello (Demetrio)
  * @version 1.0
  * @see com.demetrio.hecu.Hecu Hecu
  */
-public class PhotoStream {
+public class PhotoStream implements Closeable {
 	// the photo InputStream
 	private InputStream input;
 
@@ -53,4 +57,15 @@ public class PhotoStream {
 	public void setName(String name) {
 		this.name = name;
 	}
-}
+
+	/**
+	 * Close the image {@link InputStream InputStream}, releasing its buffers. Closing it twice has no effect.
+	 * @throws IOException - if there's an error closing the stream
+	 * @author Alessandro Chiariello (Demetrio)
+	 */
+	@Override
+	public void close() throws IOException {
+		if (input != null)
+			input.close();
+	}
+}
\ No newline at end of file
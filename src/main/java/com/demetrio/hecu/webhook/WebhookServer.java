@@ -0,0 +1,203 @@
+package com.demetrio.hecu.webhook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Embedded HTTP server receiving the bot updates pushed by Telegram through a webhook, as an alternative to
+ * long polling. <br />
+ * Each update is a JSON object posted to the webhook path: it is parsed, acknowledged right away with an empty
+ * <i>200 OK</i> and then handed to the update consumer, which is expected to process it asynchronously
+ * (e.g. on a dispatcher), so Telegram never waits for a reply to be synthesized. <br />
+ * The server answers <i>404</i> outside the webhook path, <i>405</i> to methods other than POST, <i>413</i> to
+ * bodies larger than 1 MiB, <i>400</i> to malformed JSON and <i>401</i> if a secret token is set and the request
+ * doesn't carry it in the <i>X-Telegram-Bot-Api-Secret-Token</i> header. <br />
+ * Connections are accepted by a non-blocking selector thread, and the requests are served by a small pool.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ */
+public class WebhookServer
+{
+    // logger
+    private static final Logger LOGGER = Logger.getLogger(WebhookServer.class.getName());
+
+    // the header carrying the secret token set with setWebhook
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    // the max body size in bytes: an update is a few KiB
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    // the threads serving the requests: parsing an update is short, processing happens elsewhere
+    private static final int THREADS = 4;
+
+    // the Update JSON mapper, the same mapping used by the Telegram API client
+    // unknown properties are ignored, so newer Bot API fields don't break the parsing
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // the webhook path
+    private final String path;
+
+    // the secret token, null if not required
+    private final String secret;
+
+    // the update consumer
+    private final Consumer<Update> consumer;
+
+    // the HTTP server
+    private final HttpServer server;
+
+    // the accepted and the rejected requests
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Construct a {@link WebhookServer WebhookServer} and start it.
+     * @param address the address to listen on
+     * @param path the webhook path, e.g. <i>/webhook</i>
+     * @param secret the secret token required in every request, {@code null} or empty if not required
+     * @param consumer the consumer of the received updates; it is called on the server threads after the
+     *                 acknowledgement, so it must not block
+     * @throws IOException - if the address can't be bound
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public WebhookServer(InetSocketAddress address, String path, String secret, Consumer<Update> consumer) throws IOException
+    {
+        this.path = path;
+        this.secret = secret == null || secret.isEmpty() ? null : secret;
+        this.consumer = consumer;
+        server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        AtomicInteger count = new AtomicInteger();
+        server.setExecutor(Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "hecu-webhook-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        LOGGER.log(Level.INFO, "Webhook listening on {0}:{1,number,#}{2}",
+                new Object[]{ server.getAddress().getHostString(), server.getAddress().getPort(), path });
+    }
+
+    /**
+     * Get the port the server is listening on, useful when it was started on an ephemeral port.
+     * @return the port
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the server, waiting at most one second for the requests in progress.
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    public void stop()
+    {
+        server.stop(1);
+    }
+
+    /**
+     * Get the string representation of the {@link WebhookServer WebhookServer} object. <br />
+     * The string format is: <i>WebhookServer{path = p,accepted = a,rejected = r}</i>
+     * @return the string representation of the object
+     * @author Alessandro Chiariello (Demetrio)
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{path = " + path + ",accepted = " + accepted + ",rejected = " + rejected + "}";
+    }
+
+    // receive an update: acknowledge it, then hand it to the consumer
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        Update update;
+        try
+        {
+            int status = check(exchange);
+            if (status != 200)
+            {
+                rejected.incrementAndGet();
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null)
+            {
+                rejected.incrementAndGet();
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            try
+            {
+                update = mapper.readValue(body, Update.class);
+            }
+            catch (IOException e)
+            {
+                rejected.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Malformed update received by the webhook", e);
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            accepted.incrementAndGet();
+            exchange.sendResponseHeaders(200, -1);
+        }
+        finally
+        {
+            exchange.close();
+        }
+
+        // the update is processed after the acknowledgement
+        try
+        {
+            consumer.accept(update);
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.log(Level.SEVERE, "Error handing over a webhook update", e);
+        }
+    }
+
+    // the status of a request before reading its body, 200 if it can be read
+    private int check(HttpExchange exchange)
+    {
+        if (!exchange.getRequestURI().getPath().equals(path))
+            return 404;
+        if (!exchange.getRequestMethod().equals("POST"))
+            return 405;
+        if (secret != null && !secret.equals(exchange.getRequestHeaders().getFirst(SECRET_HEADER)))
+            return 401;
+        return 200;
+    }
+
+    // read a request body, null if larger than the max size
+    private static byte[] readBody(InputStream input) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = input.read(buf)) != -1)
+        {
+            if (out.size() + n > MAX_BODY_BYTES)
+                return null;
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Package for the webhook delivery of the bot updates.
+ * It contains:
+ * <ul>
+ * 		<li>
+ * 			{@link com.demetrio.hecu.webhook.WebhookServer WebhookServer} class, an embedded HTTP server that receives
+ * 			the updates pushed by Telegram and hands them to the bot.
+ * 		</li>
+ * </ul>
+ * Sub package of {@link com.demetrio.hecu}.
+ * @author Alessandro Chiariello (Demetrio)
+ * @version 1.0
+ * @see com.demetrio.hecu.webhook.WebhookServer WebhookServer
+ */
+package com.demetrio.hecu.webhook;
\ No newline at end of file